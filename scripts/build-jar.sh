@@ -0,0 +1,29 @@
+#!/usr/bin/env bash
+# Builds the startup optimized distribution of the assembler in build/:
+#   mips-assembler.jar  the compiled classes, with Main as entry point
+#   mips-assembler.jsa  an AppCDS archive of the classes loaded while assembling the sample inputs (JDK 10 or later)
+# Run with: java -XX:SharedArchiveFile=build/mips-assembler.jsa -XX:TieredStopAtLevel=1 -jar build/mips-assembler.jar [files]
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+BUILD="$ROOT/build"
+
+rm -rf "$BUILD"
+mkdir -p "$BUILD/classes" "$BUILD/training"
+
+javac -d "$BUILD/classes" "$ROOT"/src/*.java
+jar --create --file "$BUILD/mips-assembler.jar" --main-class Main -C "$BUILD/classes" .
+
+# Training run: the classes loaded while assembling each sample input are collected into a single class list,
+# from which the shared archive is dumped
+for input in "$ROOT/assembly.in" "$ROOT"/samples/*.in; do
+    name="$(basename "$input" .in)"
+    java -XX:DumpLoadedClassList="$BUILD/training/$name.classlist" -jar "$BUILD/mips-assembler.jar" \
+         "$input" "$BUILD/training/$name.listing.out" "$BUILD/training/$name.instructions.out"
+done
+awk '!seen[$0]++' "$BUILD"/training/*.classlist > "$BUILD/training/mips-assembler.classlist"
+
+java -Xshare:dump -XX:SharedClassListFile="$BUILD/training/mips-assembler.classlist" \
+     -XX:SharedArchiveFile="$BUILD/mips-assembler.jsa" -cp "$BUILD/mips-assembler.jar" > "$BUILD/training/dump.log"
+
+echo "Built $BUILD/mips-assembler.jar and $BUILD/mips-assembler.jsa"
@@ -0,0 +1,65 @@
+#!/usr/bin/env bash
+# Startup regression check: measures the wall clock time of assembling a short input (assembly.in by default) with
+# the distribution built by build-jar.sh, on the default jvm, with the C1 only JIT, and with both the C1 only JIT and
+# the shared archive. The listing and instruction files are only flushed when the assembler exits, so this is also
+# the time to the first output.
+# The distribution is rebuilt first if any source, training input or the build script is newer than it.
+# The median time with the archive is compared with a baseline recorded on the same machine in .startup-baseline:
+# the check fails if it exceeds the baseline by more than MAX_REGRESSION_PERCENT (default 20), or MAX_STARTUP_MS
+# when that is set. Without a baseline, or with RECORD_BASELINE=1, the time measured is recorded as the baseline.
+#   usage: startup-benchmark.sh [input] [runs]
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+BUILD="$ROOT/build"
+INPUT="${1:-$ROOT/assembly.in}"
+RUNS="${2:-11}"
+BASELINE_FILE="$ROOT/.startup-baseline"
+MAX_REGRESSION_PERCENT="${MAX_REGRESSION_PERCENT:-20}"
+
+if [ ! -f "$BUILD/mips-assembler.jar" ] || [ ! -f "$BUILD/mips-assembler.jsa" ] \
+   || [ -n "$(find "$ROOT/src" "$ROOT/samples" "$ROOT/assembly.in" "$ROOT/scripts/build-jar.sh" \
+                   -newer "$BUILD/mips-assembler.jsa" -print -quit)" ]; then
+    "$ROOT/scripts/build-jar.sh"
+fi
+
+OUT="$(mktemp -d)"
+trap 'rm -rf "$OUT"' EXIT
+
+# Prints the median wall clock time in milliseconds of RUNS runs of the given java options
+median_ms() {
+    local times=()
+    for ((i = 0; i < RUNS; i++)); do
+        local start end
+        start=$(date +%s%N)
+        java "$@" -jar "$BUILD/mips-assembler.jar" "$INPUT" "$OUT/listing.out" "$OUT/instructions.out"
+        end=$(date +%s%N)
+        if [ ! -s "$OUT/instructions.out" ]; then
+            echo "No instruction output produced for $INPUT" >&2
+            exit 1
+        fi
+        times+=($(( (end - start) / 1000000 )))
+    done
+    printf '%s\n' "${times[@]}" | sort -n | sed -n "$(( (RUNS + 1) / 2 ))p"
+}
+
+# the archive and the C1 only JIT are measured separately, so that each row changes a single setting
+plain=$(median_ms -Xshare:auto)
+c1=$(median_ms -Xshare:auto -XX:TieredStopAtLevel=1)
+shared=$(median_ms -XX:SharedArchiveFile="$BUILD/mips-assembler.jsa" -XX:TieredStopAtLevel=1)
+
+if [ "${RECORD_BASELINE:-0}" = 1 ] || [ ! -f "$BASELINE_FILE" ]; then
+    echo "$shared" > "$BASELINE_FILE"
+fi
+baseline=$(cat "$BASELINE_FILE")
+limit="${MAX_STARTUP_MS:-$(( baseline * (100 + MAX_REGRESSION_PERCENT) / 100 ))}"
+
+echo "$(basename "$INPUT"), median of $RUNS runs:"
+echo "  default jvm:                 ${plain} ms"
+echo "  C1 only:                     ${c1} ms"
+echo "  C1 only, shared archive:     ${shared} ms (baseline ${baseline} ms, limit ${limit} ms)"
+
+if [ "$shared" -gt "$limit" ]; then
+    echo "Startup regression: ${shared} ms > ${limit} ms" >&2
+    exit 1
+fi
@@ -0,0 +1,249 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Evaluates the assemble-time constant expressions used as immediates, offsets and branch targets.
+ * Supported are decimal, hexadecimal and octal literals, symbols (labels and constants defined with .eqv/.set),
+ * the binary operators + - * << >> & |, unary minus, parentheses and the %hi()/%lo() relocation operators.
+ * Every unique expression is parsed only once: the resulting tree, with all the literal sub-expressions already
+ * folded into a single value, is kept in a cache and only the symbol lookups are repeated on later evaluations.
+ * Operands that are a plain literal or a bare symbol are not cached, parsing them again costing no more than the
+ * lookup, so that the cache grows with the number of distinct expressions and not with the number of distinct values.
+ */
+public class ExpressionEvaluator {
+
+    private HashMap<String, Node> cache; // Compiled expressions, indexed by their source text
+
+    // Text and position of the expression currently being compiled
+    private String text;
+    private int pos;
+
+    public ExpressionEvaluator() {
+        cache = new HashMap<>();
+    }
+
+    /**
+     * Evaluates an expression with the symbols currently present in the symbol table.
+     * @param expression The source text of the expression.
+     * @param symbolTable The table used to resolve the symbols referenced by the expression.
+     * @return The 32 bit value of the expression.
+     * @throws InvalidExpressionException The expression is not well formed.
+     * @throws UndefinedSymbolException The expression references a symbol that is not in the symbol table.
+     */
+    public int evaluate(String expression, Map<String, Symbol> symbolTable) throws InvalidExpressionException, UndefinedSymbolException {
+        Node node = cache.get(expression);
+        if( node == null ) {
+            node = compile(expression);
+            if( !isSingleToken(expression) )
+                cache.put(expression, node);
+        }
+        return node.evaluate(symbolTable);
+    }
+
+    // Whether an expression is a single literal or symbol, possibly negated, rather than a combination of them
+    private static boolean isSingleToken(String expression) {
+        for( int i = expression.startsWith("-") ? 1 : 0; i < expression.length(); i++ ) {
+            char c = expression.charAt(i);
+            if( !Character.isLetterOrDigit(c) && c != '_' && c != '.' )
+                return false;
+        }
+        return true;
+    }
+
+    // Parses the expression into a tree, folding the sub-expressions that only contain literals
+    private Node compile(String expression) throws InvalidExpressionException {
+        text = expression;
+        pos = 0;
+        Node node = parseOr();
+        skipSpaces();
+        if( pos != text.length() )
+            throw new InvalidExpressionException("Invalid expression \"" + expression + "\": unexpected \"" + text.charAt(pos) + "\"");
+        return node;
+    }
+
+    // Grammar, from the lowest to the highest precedence:
+    //   or     := and ( '|' and )*
+    //   and    := shift ( '&' shift )*
+    //   shift  := sum ( ('<<' | '>>') sum )*
+    //   sum    := term ( ('+' | '-') term )*
+    //   term   := unary ( '*' unary )*
+    //   unary  := '-' unary | primary
+    //   primary:= literal | symbol | '(' or ')' | ('%hi' | '%lo') '(' or ')'
+
+    private Node parseOr() throws InvalidExpressionException {
+        Node left = parseAnd();
+        while( accept("|") )
+            left = fold('|', left, parseAnd());
+        return left;
+    }
+
+    private Node parseAnd() throws InvalidExpressionException {
+        Node left = parseShift();
+        while( accept("&") )
+            left = fold('&', left, parseShift());
+        return left;
+    }
+
+    private Node parseShift() throws InvalidExpressionException {
+        Node left = parseSum();
+        while( true ) {
+            if( accept("<<") )
+                left = fold('<', left, parseSum());
+            else if( accept(">>") )
+                left = fold('>', left, parseSum());
+            else
+                return left;
+        }
+    }
+
+    private Node parseSum() throws InvalidExpressionException {
+        Node left = parseTerm();
+        while( true ) {
+            if( accept("+") )
+                left = fold('+', left, parseTerm());
+            else if( accept("-") )
+                left = fold('-', left, parseTerm());
+            else
+                return left;
+        }
+    }
+
+    private Node parseTerm() throws InvalidExpressionException {
+        Node left = parseUnary();
+        while( accept("*") )
+            left = fold('*', left, parseUnary());
+        return left;
+    }
+
+    private Node parseUnary() throws InvalidExpressionException {
+        if( accept("-") )
+            return fold('-', new Constant(0), parseUnary());
+        return parsePrimary();
+    }
+
+    private Node parsePrimary() throws InvalidExpressionException {
+        skipSpaces();
+        if( pos >= text.length() )
+            throw new InvalidExpressionException("Invalid expression \"" + text + "\": unexpected end of expression");
+
+        if( accept("(") ) {
+            Node inner = parseOr();
+            expect(")");
+            return inner;
+        }
+        if( accept("%hi") ) {
+            expect("(");
+            Node inner = parseOr();
+            expect(")");
+            return fold('h', inner, null);
+        }
+        if( accept("%lo") ) {
+            expect("(");
+            Node inner = parseOr();
+            expect(")");
+            return fold('l', inner, null);
+        }
+
+        int start = pos;
+        char c = text.charAt(pos);
+        if( Character.isDigit(c) ) {
+            while( pos < text.length() && Character.isLetterOrDigit(text.charAt(pos)) )
+                pos++;
+            String literal = text.substring(start, pos);
+            try {
+                return new Constant( (int) (long) Long.decode(literal) );
+            } catch (NumberFormatException e) {
+                throw new InvalidExpressionException("Invalid expression \"" + text + "\": \"" + literal + "\" is not a decimal, hexadecimal or octal number");
+            }
+        }
+        if( Character.isLetter(c) || c == '_' || c == '.' ) {
+            while( pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_' || text.charAt(pos) == '.') )
+                pos++;
+            return new SymbolReference( text.substring(start, pos) );
+        }
+        throw new InvalidExpressionException("Invalid expression \"" + text + "\": unexpected \"" + c + "\"");
+    }
+
+    private void skipSpaces() {
+        while( pos < text.length() && text.charAt(pos) == ' ' )
+            pos++;
+    }
+
+    private boolean accept(String token) {
+        skipSpaces();
+        if( text.startsWith(token, pos) ) {
+            pos += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) throws InvalidExpressionException {
+        if( !accept(token) )
+            throw new InvalidExpressionException("Invalid expression \"" + text + "\": \"" + token + "\" expected");
+    }
+
+    // Builds an operator node, or directly its value if all of its operands are literals
+    private static Node fold(char operator, Node left, Node right) {
+        if( left instanceof Constant && (right == null || right instanceof Constant) )
+            return new Constant( apply(operator, ((Constant) left).value, right == null ? 0 : ((Constant) right).value) );
+        return new Operator(operator, left, right);
+    }
+
+    private static int apply(char operator, int left, int right) {
+        switch (operator) {
+            case '|': return left | right;
+            case '&': return left & right;
+            case '<': return left << right;
+            case '>': return left >> right;
+            case '+': return left + right;
+            case '-': return left - right;
+            case '*': return left * right;
+            case 'h': return ((left + 0x8000) >> 16) & 0xffff; // upper half, adjusted for the sign extension of %lo
+            case 'l': return (short) left; // lower half, as sign extended by the processor
+            default: throw new IllegalArgumentException("Unknown operator " + operator);
+        }
+    }
+
+    // Nodes of a compiled expression
+    private interface Node {
+        int evaluate(Map<String, Symbol> symbolTable) throws UndefinedSymbolException;
+    }
+
+    private static class Constant implements Node {
+        private final int value;
+
+        Constant(int value) { this.value = value; }
+
+        public int evaluate(Map<String, Symbol> symbolTable) { return value; }
+    }
+
+    private static class SymbolReference implements Node {
+        private final String name;
+
+        SymbolReference(String name) { this.name = name; }
+
+        public int evaluate(Map<String, Symbol> symbolTable) throws UndefinedSymbolException {
+            Symbol s = symbolTable.get(name);
+            if( s == null )
+                throw new UndefinedSymbolException("Symbol \"" + name + "\" is not defined");
+            return s.getAddress();
+        }
+    }
+
+    private static class Operator implements Node {
+        private final char operator;
+        private final Node left;
+        private final Node right; // null for the unary operators
+
+        Operator(char operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        public int evaluate(Map<String, Symbol> symbolTable) throws UndefinedSymbolException {
+            return apply(operator, left.evaluate(symbolTable), right == null ? 0 : right.evaluate(symbolTable));
+        }
+    }
+}
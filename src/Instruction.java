@@ -1,81 +1,15 @@
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
- * Structure holding all the information about an instruction, as well as static information about the MIPS isa.
+ * Structure holding all the information about an instruction. The static information about the MIPS isa is described in InstructionSet.
  */
 public class Instruction {
 	private String name;
 	private ArrayList<Field> fields;
 	private Integer address;
-
-    private static HashMap<String,Integer> funcCodes; // The list of function codes of special instructions recognized by the assembler
-    static {
-        funcCodes = new HashMap<>();
-        funcCodes.put("add",32);
-        funcCodes.put("sub",34);
-        funcCodes.put("and",36);
-        funcCodes.put("or",37);
-        funcCodes.put("nor",39);
-        funcCodes.put("slt",42);
-        funcCodes.put("sll",0);
-        funcCodes.put("jr",8);
-        funcCodes.put("nop",0);
-    }
-    private static HashMap<String,Integer> opCodes; // The list of opcodes of the instructions recognized by the assembler
-    static {
-        opCodes = new HashMap<>();
-        opCodes.put("add",0);
-        opCodes.put("sub",0);
-        opCodes.put("and",0);
-        opCodes.put("or",0);
-        opCodes.put("nor",0);
-        opCodes.put("slt",0);
-        opCodes.put("sll",0);
-        opCodes.put("jr",0);
-        opCodes.put("lw",35); // signed offset
-        opCodes.put("sw",43); // signed offset
-        opCodes.put("beq",4); // signed offset calculated from an immediate address, and shifted to the right by 2 bits (divided by four = offset in no of instructions)
-        opCodes.put("addi",8); // signed immediate
-        opCodes.put("j",2); // address in argument must be shifted to the right by 2 bits (divided by four = instruction count)
-        opCodes.put("nop",0); //Stands for sll r0,r0,0, meaning: Logically shift register 0 zero bits to the left and store the result in register 0
-    }
-    private static ArrayList<String> registers; // List of all existing registers of the MIPS isa. The register number corresponds to the index of its name in this list
-    static {
-        registers = new ArrayList<>();
-        registers.add("$zero"); // 0
-        registers.add("$at"); // 1
-        registers.add("$v0"); // 2
-        registers.add("$v1"); // 3
-        registers.add("$a0"); // 4
-        registers.add("$a1"); // 5
-        registers.add("$a2"); // 6
-        registers.add("$a3"); // 7
-        registers.add("$t0"); // 8
-        registers.add("$t1"); // 9
-        registers.add("$t2"); // 10
-        registers.add("$t3"); // 11
-        registers.add("$t4"); // 12
-        registers.add("$t5"); // 13
-        registers.add("$t6"); // 14
-        registers.add("$t7"); // 15
-        registers.add("$s0"); // 16
-        registers.add("$s1"); // 17
-        registers.add("$s2"); // 18
-        registers.add("$s3"); // 19
-        registers.add("$s4"); // 20
-        registers.add("$s5"); // 21
-        registers.add("$s6"); // 22
-        registers.add("$s7"); // 23
-        registers.add("$t8"); // 24
-        registers.add("$t9"); // 25
-        registers.add("$k0"); // 26
-        registers.add("$k1"); // 27
-        registers.add("$gp"); // 28
-        registers.add("$sp"); // 29
-        registers.add("$fp"); // 30
-        registers.add("$ra"); // 31
-    }
+	private int id; // index of the instruction in InstructionSet
+	private int rs, rt, rd, immediate; // register numbers and immediate value, also kept in fields
+	private int target; // jump target, as an instruction count
 
     /**
      * Instruction constructor. Initializes the instruction according to the argument list passed as parameter.
@@ -107,96 +41,93 @@ public class Instruction {
 
     // called by the constructor to initialize the appropriate number of arguments for the particular instruction with the correct values
     private void assignFields(String name,ArrayList<String> rawFields) throws UnknownRegisterException,UnknownInstructionException,InstructionFormatException{
-        // assign the opcode according to the instruction name, if not know op=null
-        this.fields.add(new Field("op", opCodes.get(name)));
-        // assign the remaining fields according to the particular instruction format
-        switch(name) {
-            // R-format
-            case "add":
-            case "sub":
-            case "and":
-            case "or":
-            case "slt":
-            case "nor":
-                this.fields.add(new Field("rs",registers.indexOf(rawFields.get(2))));
-                this.fields.add(new Field("rt",registers.indexOf(rawFields.get(3))));
-                this.fields.add(new Field("rd",registers.indexOf(rawFields.get(1))));
-                this.fields.add(new Field("sa",0));
-                this.fields.add(new Field("func",funcCodes.get(name)));
-                break;
-            case "sll":
-                this.fields.add(new Field("rs",0));
-                this.fields.add(new Field("rt",registers.indexOf(rawFields.get(2))));
-                this.fields.add(new Field("rd",registers.indexOf(rawFields.get(1))));
-                this.fields.add(new Field("sa",Integer.decode(rawFields.get(3))));
-                this.fields.add(new Field("func",funcCodes.get(name)));
-                break;
-            case "jr":
-                this.fields.add(new Field("rs",registers.indexOf(rawFields.get(1))));
-                this.fields.add(new Field("rt",0));
-                this.fields.add(new Field("rd",0));
-                this.fields.add(new Field("sa",0));
-                this.fields.add(new Field("func",funcCodes.get(name)));
-                break;
-            case "nop":
-                this.fields.add(new Field("rs",0));
-                this.fields.add(new Field("rt",0));
-                this.fields.add(new Field("rd",0));
-                this.fields.add(new Field("sa",0));
-                this.fields.add(new Field("func",funcCodes.get(name)));
-                break;
+        id = InstructionSet.lookup(name);
+        if(id == -1){
+            throw new UnknownInstructionException("Unknown instruction");
+        }
 
-            // I-format
-            case "lw":
-            case "sw":
-                this.fields.add(new Field("rs",registers.indexOf(rawFields.get(3))));
-                this.fields.add(new Field("rt",registers.indexOf(rawFields.get(1))));
-                this.fields.add(new Field("immediate",Integer.decode(rawFields.get(2)))); // signed offset
-                break;
-            case "beq":
-                this.fields.add(new Field("rs",registers.indexOf(rawFields.get(1))));
-                this.fields.add(new Field("rt",registers.indexOf(rawFields.get(2))));
-                int offset = Integer.decode(rawFields.get(3)) - (address + 4);
-                this.fields.add(new Field("immediate",offset>>2)); // signed offset calculated from an immediate address, and shifted to the right by 2 bits (divided by four = offset in no of instructions)
+        // collect the value of each operand in the field it is encoded in, the order of the operands being given by the isa description
+        int[] operands = InstructionSet.getOperands(id);
+        int sa = 0;
+        for(int i = 0; i < operands.length; i++){
+            String raw = rawFields.get(i + 1);
+            switch (operands[i]){
+                case InstructionSet.RS:
+                    rs = register(raw);
+                    break;
+                case InstructionSet.RT:
+                    rt = register(raw);
+                    break;
+                case InstructionSet.RD:
+                    rd = register(raw);
+                    break;
+                case InstructionSet.SA:
+                    sa = Integer.decode(raw);
+                    break;
+                case InstructionSet.IMMEDIATE:
+                    immediate = Integer.decode(raw); // signed immediate or offset
+                    if(immediate < -0x8000 || immediate > 0x7fff){
+                        throw new InstructionFormatException("Incorrect instruction format: Signed immediate " + raw + " is not in the range -32768 to 32767");
+                    }
+                    break;
+                case InstructionSet.UNSIGNED:
+                    immediate = Integer.decode(raw);
+                    if(immediate < 0 || immediate > 0xffff){
+                        throw new InstructionFormatException("Incorrect instruction format: Unsigned immediate " + raw + " is not in the range 0 to 0xffff");
+                    }
+                    immediate = (short) immediate; // same 16 bits, as a value the signed overflow check accepts
+                    break;
+                case InstructionSet.BRANCH:
+                    immediate = (Integer.decode(raw) - (address + 4)) >> 2; // signed offset calculated from an immediate address, and shifted to the right by 2 bits (divided by four = offset in no of instructions)
+                    if(immediate < -0x8000 || immediate > 0x7fff){
+                        throw new InstructionFormatException("Incorrect instruction format: Branch target " + raw + " is out of the range of a 16 bit offset");
+                    }
+                    break;
+                case InstructionSet.TARGET:
+                    target = Integer.parseInt(raw) >> 2; // address in argument must be shifted to the right by 2 bits (divided by four = instruction count)
+                    break;
+            }
+        }
+
+        // assign the fields according to the instruction format
+        this.fields.add(new Field("op", InstructionSet.getOpCode(id)));
+        switch(InstructionSet.getFormat(id)) {
+            case InstructionSet.R_FORMAT:
+                this.fields.add(new Field("rs",rs));
+                this.fields.add(new Field("rt",rt));
+                this.fields.add(new Field("rd",rd));
+                this.fields.add(new Field("sa",sa));
+                this.fields.add(new Field("func",InstructionSet.getFuncCode(id)));
                 break;
-            case "addi":
-                this.fields.add(new Field("rs",registers.indexOf(rawFields.get(2))));
-                this.fields.add(new Field("rt",registers.indexOf(rawFields.get(1))));
-                this.fields.add(new Field("immediate",Integer.decode(rawFields.get(3)))); // signed immediate
+            case InstructionSet.I_FORMAT:
+                this.fields.add(new Field("rs",rs));
+                this.fields.add(new Field("rt",rt));
+                this.fields.add(new Field("immediate",immediate));
                 break;
-
-            // J-format
-            case "j":
-                this.fields.add(new Field("address",Integer.parseInt(rawFields.get(1))>>2)); // address in argument must be shifted to the right by 2 bits (divided by four = instruction count)
+            case InstructionSet.J_FORMAT:
+                this.fields.add(new Field("address",target));
                 break;
         }
 
         // EXCEPTIONS
-        // op = null or func = null --> unknown instruction (UnknownInstructionException)
-        // register field value = -1 --> unknown register (UnknownRegisterException)
-        // |rawFields|>|fields| --> too many arguments (IndexOutOfBound)
+        // register not known by the isa --> unknown register (UnknownRegisterException)
+        // |rawFields|>|operands| --> too many arguments (InstructionFormatException)
         // exception raised by .get() --> too little arguments (IndexOutOfBound)
         // exception raised by .decode() --> wrong immediate field value (NumberFormatException)
-        for (Field field: this.fields) {
-            switch (field.getName()){
-                case "op":
-                case "func":
-                    if(field.getValue() == null){
-                        throw new UnknownInstructionException("Unknown instruction");
-                    }
-                case "rs":
-                case "rd":
-                case "rt":
-                    if(field.getValue() == -1){
-                        throw new UnknownRegisterException("Unknown register");
-                    }
-            }
-        }
-        if(rawFields.size()>fields.size()){
+        if(rawFields.size() > operands.length + 1){
             throw new InstructionFormatException("Incorrect instruction format: Instruction has too many arguments");
         }
     }
 
+    // number of the register named in an argument
+    private static int register(String raw) throws UnknownRegisterException {
+        int number = InstructionSet.register(raw);
+        if(number == -1){
+            throw new UnknownRegisterException("Unknown register");
+        }
+        return number;
+    }
+
     /**
      * Method used for encoding the instruction into an integer, that when written in binary corresponds to how the MIPS processor receives the instruction
      * @return The instruction encoded into an integer
@@ -234,6 +165,64 @@ public class Instruction {
         return name;
     }
 
+    public int getId() {
+        return id;
+    }
+
+    public Integer getAddress() {
+        return address;
+    }
+
+    public int getImmediate() {
+        return immediate;
+    }
+
+    /**
+     * @return The address the instruction transfers the control to: the target of a branch or of a j/jal, -1 if the
+     * instruction does not branch or only jumps to the address held in a register.
+     */
+    public int getTargetAddress() {
+        int type = InstructionSet.getType(id);
+        if(type == InstructionSet.TYPE_BRANCH){
+            return address + 4 + (immediate << 2);
+        }
+        if(InstructionSet.getFormat(id) == InstructionSet.J_FORMAT){
+            return target << 2;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of the register written by the instruction, 0 if none ($zero is never actually written).
+     */
+    public int getDestinationRegister() {
+        if(InstructionSet.getType(id) == InstructionSet.TYPE_CALL){
+            return 31; // the return address goes to $ra
+        }
+        switch (InstructionSet.getDestination(id)){
+            case InstructionSet.RD: return rd;
+            case InstructionSet.RT: return rt;
+            default: return 0;
+        }
+    }
+
+    /**
+     * @param index 0 for the register in the rs field, 1 for the one in the rt field.
+     * @return The number of the register read through that field, 0 if the field is not read ($zero is constant anyway).
+     */
+    public int getSourceRegister(int index) {
+        int kind = index == 0 ? InstructionSet.RS : InstructionSet.RT;
+        if(InstructionSet.getDestination(id) == kind){
+            return 0;
+        }
+        for(int operand : InstructionSet.getOperands(id)){
+            if(operand == kind){
+                return kind == InstructionSet.RS ? rs : rt;
+            }
+        }
+        return 0;
+    }
+
     public ArrayList<Field> getFields() {
         return fields;
     }
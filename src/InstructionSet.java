@@ -0,0 +1,286 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Static description of the MIPS isa recognized by the assembler.
+ * The instructions are described by a single table, compiled at class initialization into dense arrays indexed by
+ * an instruction id, and into a perfect hash table giving the id of a mnemonic with a single string comparison.
+ * Registers are looked up the same way, so parsing and encoding take constant time whatever the size of the isa.
+ */
+public class InstructionSet {
+
+    // Instruction formats
+    public static final int R_FORMAT = 0;
+    public static final int I_FORMAT = 1;
+    public static final int J_FORMAT = 2;
+
+    // Operand kinds, as written in the operands column of the description
+    public static final int RS = 0;         // "rs"      register in the rs field
+    public static final int RT = 1;         // "rt"      register in the rt field
+    public static final int RD = 2;         // "rd"      register in the rd field
+    public static final int SA = 3;         // "sa"      shift amount
+    public static final int IMMEDIATE = 4;  // "imm"     signed 16 bit immediate
+    public static final int UNSIGNED = 5;   // "uimm"    unsigned 16 bit immediate
+    public static final int BRANCH = 6;     // "label"   branch target address, encoded as an offset in instructions from the next one
+    public static final int TARGET = 7;     // "target"  jump target address, encoded as an instruction count
+    // "imm(rs)" stands for an offset followed by its base register, as split by the parser
+
+    // Instruction types, as written in the type column of the description
+    public static final int TYPE_ALU = 0;       // "alu"     arithmetic, logic and shifts, moves from and to hi/lo
+    public static final int TYPE_MULDIV = 1;    // "muldiv"  multiplications and divisions, writing hi/lo
+    public static final int TYPE_LOAD = 2;      // "load"
+    public static final int TYPE_STORE = 3;     // "store"
+    public static final int TYPE_BRANCH = 4;    // "branch"  conditional branches
+    public static final int TYPE_JUMP = 5;      // "jump"
+    public static final int TYPE_CALL = 6;      // "call"    jumps linking the return address in $ra
+    public static final int TYPE_SYSTEM = 7;    // "system"
+    private static final String TYPE_NAMES = "alu muldiv load store branch jump call system";
+
+    // The instruction set. Columns: mnemonic, format, opcode, function code (R-format only), type, operands in the order they are written
+    private static final String[] DESCRIPTION = {
+        // R-format
+        "add     R  0   32  alu     rd, rs, rt",
+        "addu    R  0   33  alu     rd, rs, rt",
+        "sub     R  0   34  alu     rd, rs, rt",
+        "subu    R  0   35  alu     rd, rs, rt",
+        "and     R  0   36  alu     rd, rs, rt",
+        "or      R  0   37  alu     rd, rs, rt",
+        "xor     R  0   38  alu     rd, rs, rt",
+        "nor     R  0   39  alu     rd, rs, rt",
+        "slt     R  0   42  alu     rd, rs, rt",
+        "sltu    R  0   43  alu     rd, rs, rt",
+        "sll     R  0   0   alu     rd, rt, sa",
+        "srl     R  0   2   alu     rd, rt, sa",
+        "sra     R  0   3   alu     rd, rt, sa",
+        "sllv    R  0   4   alu     rd, rt, rs",
+        "srlv    R  0   6   alu     rd, rt, rs",
+        "srav    R  0   7   alu     rd, rt, rs",
+        "jr      R  0   8   jump    rs",
+        "syscall R  0   12  system",
+        "mfhi    R  0   16  alu     rd",
+        "mthi    R  0   17  alu     rs",
+        "mflo    R  0   18  alu     rd",
+        "mtlo    R  0   19  alu     rs",
+        "mult    R  0   24  muldiv  rs, rt",
+        "multu   R  0   25  muldiv  rs, rt",
+        "div     R  0   26  muldiv  rs, rt",
+        "divu    R  0   27  muldiv  rs, rt",
+        "nop     R  0   0   alu", // Stands for sll r0,r0,0, meaning: Logically shift register 0 zero bits to the left and store the result in register 0
+        // I-format
+        "beq     I  4   -   branch  rs, rt, label",
+        "bne     I  5   -   branch  rs, rt, label",
+        "blez    I  6   -   branch  rs, label",
+        "bgtz    I  7   -   branch  rs, label",
+        "addi    I  8   -   alu     rt, rs, imm",
+        "addiu   I  9   -   alu     rt, rs, imm",
+        "slti    I  10  -   alu     rt, rs, imm",
+        "sltiu   I  11  -   alu     rt, rs, imm",
+        "andi    I  12  -   alu     rt, rs, uimm",
+        "ori     I  13  -   alu     rt, rs, uimm",
+        "xori    I  14  -   alu     rt, rs, uimm",
+        "lui     I  15  -   alu     rt, uimm",
+        "lb      I  32  -   load    rt, imm(rs)",
+        "lh      I  33  -   load    rt, imm(rs)",
+        "lw      I  35  -   load    rt, imm(rs)",
+        "lbu     I  36  -   load    rt, imm(rs)",
+        "lhu     I  37  -   load    rt, imm(rs)",
+        "sb      I  40  -   store   rt, imm(rs)",
+        "sh      I  41  -   store   rt, imm(rs)",
+        "sw      I  43  -   store   rt, imm(rs)",
+        // J-format
+        "j       J  2   -   jump    target",
+        "jal     J  3   -   call    target",
+    };
+
+    // Register names, the register number being the index of the name. Kept as a constant regular expression
+    // alternation so that the parser patterns built from it are folded by the compiler instead of at class initialization
+    public static final String REGISTER_NAMES_RE = "zero|at|v0|v1|a0|a1|a2|a3"
+                                                 + "|t0|t1|t2|t3|t4|t5|t6|t7"
+                                                 + "|s0|s1|s2|s3|s4|s5|s6|s7"
+                                                 + "|t8|t9|k0|k1|gp|sp|fp|ra";
+    private static final String[] REGISTERS;
+
+    // Seeds of the perfect hash functions for the current tables, found by PerfectHash. They are only hints:
+    // if the tables are modified, another seed is searched at class initialization.
+    private static final int INSTRUCTION_SEED = 18;
+    private static final int REGISTER_SEED = 5;
+
+    // Compiled description, indexed by instruction id
+    private static final String[] mnemonics;
+    private static final int[] formats;
+    private static final int[] opCodes;
+    private static final int[] funcCodes;
+    private static final int[] types;
+    private static final int[][] operands;
+    private static final int[] destinations; // operand kind of the register written by the instruction, -1 if none
+
+    private static final PerfectHash instructionIds;
+    private static final PerfectHash registerNumbers;
+
+    static {
+        int count = DESCRIPTION.length;
+        mnemonics = new String[count];
+        formats = new int[count];
+        opCodes = new int[count];
+        funcCodes = new int[count];
+        types = new int[count];
+        operands = new int[count][];
+        destinations = new int[count];
+        String[] typeNames = split(TYPE_NAMES, ' ', Integer.MAX_VALUE);
+
+        // The description is split by hand rather than with regular expressions, which are costly to compile at startup
+        for (int id = 0; id < count; id++) {
+            String[] columns = split(DESCRIPTION[id], ' ', 6);
+            mnemonics[id] = columns[0];
+            formats[id] = "RIJ".indexOf(columns[1]);
+            opCodes[id] = Integer.parseInt(columns[2]);
+            funcCodes[id] = columns[3].equals("-") ? 0 : Integer.parseInt(columns[3]);
+            types[id] = Arrays.asList(typeNames).indexOf(columns[4]);
+            if (types[id] == -1)
+                throw new IllegalStateException("Unknown type \"" + columns[4] + "\" in the description of " + columns[0]);
+
+            String[] written = columns.length > 5 ? split(columns[5], ',', Integer.MAX_VALUE) : new String[0];
+            int[] kinds = new int[written.length * 2];
+            int n = 0;
+            for (String operand : written) {
+                switch (operand) {
+                    case "rs": kinds[n++] = RS; break;
+                    case "rt": kinds[n++] = RT; break;
+                    case "rd": kinds[n++] = RD; break;
+                    case "sa": kinds[n++] = SA; break;
+                    case "imm": kinds[n++] = IMMEDIATE; break;
+                    case "uimm": kinds[n++] = UNSIGNED; break;
+                    case "label": kinds[n++] = BRANCH; break;
+                    case "target": kinds[n++] = TARGET; break;
+                    case "imm(rs)": kinds[n++] = IMMEDIATE; kinds[n++] = RS; break;
+                    default: throw new IllegalStateException("Unknown operand \"" + operand + "\" in the description of " + columns[0]);
+                }
+            }
+            operands[id] = Arrays.copyOf(kinds, n);
+
+            // the result goes to rd for the R-format, to rt for the I-format instructions computing or loading a value
+            int destination = -1;
+            for (int kind : operands[id]) {
+                if (kind == RD || (kind == RT && formats[id] == I_FORMAT && (types[id] == TYPE_ALU || types[id] == TYPE_LOAD)))
+                    destination = kind;
+            }
+            destinations[id] = destination;
+        }
+
+        REGISTERS = split(REGISTER_NAMES_RE, '|', Integer.MAX_VALUE);
+        instructionIds = new PerfectHash(mnemonics, INSTRUCTION_SEED);
+        registerNumbers = new PerfectHash(REGISTERS, REGISTER_SEED);
+    }
+
+    // Splits a line on a separator into at most limit trimmed, non empty words
+    private static String[] split(String line, char separator, int limit) {
+        ArrayList<String> words = new ArrayList<>();
+        int start = 0;
+        while (start < line.length()) {
+            int end = words.size() == limit - 1 ? line.length() : line.indexOf(separator, start);
+            if (end == -1)
+                end = line.length();
+            String word = line.substring(start, end).trim();
+            if (!word.isEmpty())
+                words.add(word);
+            start = end + 1;
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * Looks up the id of an instruction, used to index the other properties of the instruction.
+     * @param mnemonic The name of the instruction.
+     * @return The id of the instruction, or -1 if the instruction is not known.
+     */
+    public static int lookup(String mnemonic) {
+        return instructionIds.get(mnemonic);
+    }
+
+    /**
+     * Looks up the number of a register written either by name ($t0) or by number ($8).
+     * @param register The register, including the leading $.
+     * @return The register number, or -1 if the register does not exist.
+     */
+    public static int register(String register) {
+        if (register.length() < 2 || register.charAt(0) != '$')
+            return -1;
+        char first = register.charAt(1);
+        if (first >= '0' && first <= '9') {
+            int number = 0;
+            for (int i = 1; i < register.length(); i++) {
+                char c = register.charAt(i);
+                if (c < '0' || c > '9' || (number = number * 10 + c - '0') >= REGISTERS.length)
+                    return -1;
+            }
+            return number;
+        }
+        return registerNumbers.get(register.substring(1));
+    }
+
+    /**
+     * @return The number of instructions in the set, ids ranging from 0 to size() - 1.
+     */
+    public static int size() { return mnemonics.length; }
+
+    public static String getMnemonic(int id) { return mnemonics[id]; }
+    public static int getFormat(int id) { return formats[id]; }
+    public static int getOpCode(int id) { return opCodes[id]; }
+    public static int getFuncCode(int id) { return funcCodes[id]; }
+    public static int getType(int id) { return types[id]; }
+    public static int[] getOperands(int id) { return operands[id]; }
+    public static int getDestination(int id) { return destinations[id]; }
+
+    /**
+     * Collision free hash table over a fixed set of keys, mapping each key to its index in the set.
+     * The seed of the hash function is searched at construction so that no two keys share a slot.
+     */
+    private static class PerfectHash {
+        private final String[] keys;
+        private final int[] slots; // index of the key hashed to each slot, -1 for empty slots
+        private final int seed;
+        private final int mask;
+
+        PerfectHash(String[] keys, int seedHint) {
+            this.keys = keys;
+            int size = Integer.highestOneBit(Math.max(keys.length, 1) * 4 - 1) << 1;
+            int s = seedHint;
+            int[] table = tryBuild(keys, s, size - 1);
+            if (table == null)
+                s = 0;
+            while (table == null) {
+                table = tryBuild(keys, ++s, size - 1);
+                if (s % 1000 == 0)
+                    size <<= 1;
+            }
+            this.slots = table;
+            this.seed = s;
+            this.mask = table.length - 1;
+        }
+
+        // Builds the slot table for the given seed, or returns null if two keys collide
+        private static int[] tryBuild(String[] keys, int seed, int mask) {
+            int[] table = new int[mask + 1];
+            Arrays.fill(table, -1);
+            for (int i = 0; i < keys.length; i++) {
+                int slot = hash(keys[i], seed) & mask;
+                if (table[slot] != -1)
+                    return null;
+                table[slot] = i;
+            }
+            return table;
+        }
+
+        private static int hash(String key, int seed) {
+            int h = seed;
+            for (int i = 0; i < key.length(); i++)
+                h = h * 0x01000193 ^ key.charAt(i);
+            return h ^ (h >>> 15);
+        }
+
+        int get(String key) {
+            int index = slots[hash(key, seed) & mask];
+            return index != -1 && keys[index].equals(key) ? index : -1;
+        }
+    }
+}
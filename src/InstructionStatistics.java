@@ -0,0 +1,289 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Instruction mix and control flow statistics of the assembled program, for the whole program and from each label to
+ * the next one: instructions by format and by type, nops, count of every instruction, histogram of the branch
+ * distances and fan-in of the labels (branches and jumps targeting them).
+ * The instructions are fed in program order as they are encoded, and counted in a single row of counters indexed by
+ * column, which is stored and reset whenever the address of the next label is reached. The memory used thus depends
+ * on the number of labels, not on the length of the program.
+ *
+ * The report is a CSV file shared by successive runs of the assembler: the rows of the program replace the ones of a
+ * previous run on the same source file, the rows of the other programs are kept, and the last row (program "*")
+ * totals all the programs of the file. Concurrent runs are serialized by locking the file.
+ */
+public class InstructionStatistics {
+
+    // Columns of the report, before the histogram of the branch distances and the count of every instruction
+    private static final String[] COLUMNS = {
+        "program", "label", "address", "instructions", "r_format", "i_format", "j_format",
+        "alu", "muldiv", "loads", "stores", "branches", "jumps", "calls", "system", "nops",
+        "fan_in", "forward_branches", "backward_branches"
+    };
+    private static final int COUNTERS = 3; // index of the first column holding a counter
+    private static final int DISTANCE_BUCKETS = 17; // 0, 1, 2-3, 4-7, ... 32768-65535 instructions
+    private static final String TOTAL = "*";
+
+    // Index of each counter in a row of counters, i.e. its column minus COUNTERS
+    private static final int INSTRUCTIONS = 0;
+    private static final int FORMATS = 1;       // indexed by InstructionSet format
+    private static final int TYPES = 4;         // indexed by InstructionSet type
+    private static final int NOPS = 12;
+    private static final int FAN_IN = 13;
+    private static final int FORWARD = 14;
+    private static final int BACKWARD = 15;
+    private static final int DISTANCES = 16;    // indexed by bucket
+    private static final int IDS = DISTANCES + DISTANCE_BUCKETS; // indexed by InstructionSet id
+
+    private String filePath;
+    private int nopId;
+
+    private ArrayList<Symbol> labels;  // labels of the program, sorted by address
+    private int[] labelAddresses;      // distinct addresses of the labels, sorted
+    private int[][] segments;          // counters of the instructions from each label address to the next one
+    private int[] fanIns;              // branches and jumps targeting each label address
+    private int[] program;             // counters of the whole program
+    private int[] counters;            // counters of the current segment
+    private int segment;               // index of the current segment in labelAddresses, -1 before the first label
+
+    /**
+     * @param filePath The path of the CSV report, created or updated by write().
+     */
+    public InstructionStatistics(String filePath) {
+        this.filePath = filePath;
+        nopId = InstructionSet.lookup("nop");
+    }
+
+    /**
+     * Prepares the counters, one row per label.
+     * @param symbolTable The complete symbol table of the program, only its labels are considered.
+     */
+    public void start(Map<String, Symbol> symbolTable) {
+        labels = new ArrayList<>();
+        for (Symbol s : symbolTable.values()) {
+            if (s.getKind() == Symbol.Kind.LABEL)
+                labels.add(s);
+        }
+        labels.sort(Symbol.BY_ADDRESS);
+
+        labelAddresses = new int[labels.size()];
+        int n = 0;
+        for (Symbol label : labels) {
+            if (n == 0 || labelAddresses[n - 1] != label.getAddress())
+                labelAddresses[n++] = label.getAddress();
+        }
+        labelAddresses = Arrays.copyOf(labelAddresses, n);
+
+        int width = IDS + InstructionSet.size();
+        segments = new int[n][];
+        fanIns = new int[n];
+        program = new int[width];
+        counters = new int[width];
+        segment = -1;
+    }
+
+    /**
+     * Counts the next instruction of the program.
+     * @param instruction The instruction, following the previously counted one in program order.
+     */
+    public void add(Instruction instruction) {
+        int address = instruction.getAddress();
+        while (segment + 1 < labelAddresses.length && labelAddresses[segment + 1] <= address)
+            nextSegment();
+
+        int id = instruction.getId();
+        int type = InstructionSet.getType(id);
+        counters[INSTRUCTIONS]++;
+        counters[FORMATS + InstructionSet.getFormat(id)]++;
+        counters[TYPES + type]++;
+        counters[IDS + id]++;
+        // besides nop itself, an instruction whose only effect is to write $zero does nothing
+        if (id == nopId || (type == InstructionSet.TYPE_ALU && InstructionSet.getDestination(id) != -1
+                && instruction.getDestinationRegister() == 0))
+            counters[NOPS]++;
+        if (type == InstructionSet.TYPE_BRANCH) {
+            int distance = instruction.getImmediate(); // in instructions from the next one
+            counters[distance < 0 ? BACKWARD : FORWARD]++;
+            counters[DISTANCES + 32 - Integer.numberOfLeadingZeros(Math.abs(distance))]++;
+        }
+
+        int target = instruction.getTargetAddress();
+        if (target != -1) {
+            int label = Arrays.binarySearch(labelAddresses, target);
+            if (label >= 0)
+                fanIns[label]++;
+        }
+    }
+
+    // Stores the counters of the current segment, and starts the one of the next label address
+    private void nextSegment() {
+        for (int c = 0; c < counters.length; c++)
+            program[c] += counters[c];
+        if (segment >= 0)
+            segments[segment] = counters.clone();
+        Arrays.fill(counters, 0);
+        segment++;
+    }
+
+    /**
+     * Writes the statistics of the program in the report, merging them with the ones already in it.
+     * @param sourceFilePath The path of the source file, identifying the program in the report.
+     * @throws IOException Exception raised while reading or writing the report, or the report has other columns.
+     */
+    public void write(String sourceFilePath) throws IOException {
+        // the labels after the last instruction get empty segments
+        while (segment < labelAddresses.length)
+            nextSegment();
+        for (int fanIn : fanIns)
+            program[FAN_IN] += fanIn;
+
+        String[] header = header();
+        ArrayList<String[]> rows = new ArrayList<>();
+        rows.add(row(sourceFilePath, "", "", program));
+        for (Symbol label : labels) {
+            int index = Arrays.binarySearch(labelAddresses, label.getAddress());
+            segments[index][FAN_IN] = fanIns[index];
+            rows.add(row(sourceFilePath, label.getName(), String.format("%#010x", label.getAddress()), segments[index]));
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "rw")) {
+            FileLock lock = file.getChannel().lock();
+            try {
+                ArrayList<String[]> merged = new ArrayList<>();
+                for (String[] row : read(file.getChannel(), header)) {
+                    if (!row[0].equals(sourceFilePath) && !row[0].equals(TOTAL))
+                        merged.add(row);
+                }
+                merged.addAll(rows);
+
+                // the programs are totalled from their whole program rows, the ones without a label
+                long[] totals = new long[header.length];
+                for (String[] row : merged) {
+                    if (row[1].isEmpty()) {
+                        for (int c = COUNTERS; c < header.length; c++)
+                            totals[c] += Long.parseLong(row[c]);
+                    }
+                }
+                String[] total = new String[header.length];
+                total[0] = TOTAL;
+                total[1] = "";
+                total[2] = "";
+                for (int c = COUNTERS; c < header.length; c++)
+                    total[c] = Long.toString(totals[c]);
+                merged.add(total);
+
+                StringBuilder text = new StringBuilder(8 * header.length * (merged.size() + 1));
+                line(text, header);
+                for (String[] row : merged)
+                    line(text, row);
+                byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+                file.setLength(0);
+                file.getChannel().write(ByteBuffer.wrap(bytes), 0);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // Names of all the columns: the fixed ones, the distance buckets, then one per instruction of the set
+    private static String[] header() {
+        String[] header = Arrays.copyOf(COLUMNS, COLUMNS.length + DISTANCE_BUCKETS + InstructionSet.size());
+        int c = COLUMNS.length;
+        for (int bucket = 0; bucket < DISTANCE_BUCKETS; bucket++) {
+            int low = bucket == 0 ? 0 : 1 << (bucket - 1);
+            int high = bucket == 0 ? 0 : (1 << bucket) - 1;
+            header[c++] = low == high ? "distance_" + low : "distance_" + low + "_" + high;
+        }
+        for (int id = 0; id < InstructionSet.size(); id++)
+            header[c++] = "count_" + InstructionSet.getMnemonic(id);
+        return header;
+    }
+
+    // Row of the report for a label or the whole program
+    private static String[] row(String program, String name, String address, int[] counters) {
+        String[] row = new String[COUNTERS + counters.length];
+        row[0] = program;
+        row[1] = name;
+        row[2] = address;
+        for (int c = 0; c < counters.length; c++)
+            row[COUNTERS + c] = Integer.toString(counters[c]);
+        return row;
+    }
+
+    // Reads the rows of an existing report, checking that it has the same columns
+    private ArrayList<String[]> read(FileChannel channel, String[] header) throws IOException {
+        ArrayList<String[]> rows = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) == -1)
+                break;
+        }
+        String text = new String(buffer.array(), StandardCharsets.UTF_8);
+        if (text.isEmpty())
+            return rows;
+
+        String[] lines = text.split("\r?\n");
+        if (!Arrays.equals(fields(lines[0]), header))
+            throw new IOException("\"" + filePath + "\" is not a statistics report with the same columns");
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].isEmpty())
+                continue;
+            String[] row = fields(lines[i]);
+            if (row.length != header.length)
+                throw new IOException("Line " + (i + 1) + " of \"" + filePath + "\" has " + row.length + " columns instead of " + header.length);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // Splits a CSV line, fields containing a comma or a quote being quoted
+    private static String[] fields(String line) {
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    // Appends a row as a CSV line
+    private static void line(StringBuilder text, String[] row) {
+        for (int c = 0; c < row.length; c++) {
+            if (c > 0)
+                text.append(',');
+            String field = row[c];
+            if (field.indexOf(',') != -1 || field.indexOf('"') != -1)
+                text.append('"').append(field.replace("\"", "\"\"")).append('"');
+            else
+                text.append(field);
+        }
+        text.append(System.lineSeparator());
+    }
+}
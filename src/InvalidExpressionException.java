@@ -0,0 +1,6 @@
+public class InvalidExpressionException extends Exception {
+    public InvalidExpressionException(){}
+    public InvalidExpressionException(String str){
+        super(str);
+    }
+}
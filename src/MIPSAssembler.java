@@ -12,17 +12,72 @@ public class MIPSAssembler implements Closeable {
 
     private HashMap<String, Symbol> symbolTable;
 
-    private Writer listFileWriter;
+    private Writer listFileWriter; // null when the listing is disabled
     private Writer instructionFileWriter;
+    private final char[] hexBuffer = new char[10]; // reused to write the encoded instructions
+
+    private PipelineEstimator estimator; // null when no cycle estimate is requested
+    private SourceMapWriter sourceMap; // null when no source map is requested
+    private InstructionStatistics statistics; // null when no statistics report is requested
+
+    // Number of instructions of each li and la pseudo-instruction, in order of appearance, as computed by the first pass
+    private int[] loadSizes; // only ever grow from one pass to the next, so that the first pass terminates
+    private int loadCount;
+    private boolean loadSizesChanged;
 
     public MIPSAssembler(String inputFilePath,String outputListingFilePath, String outputInstructionFilePath) throws IOException {
+        this(inputFilePath, outputListingFilePath, outputInstructionFilePath, null);
+    }
+
+    /**
+     * @param inputFilePath Path of the assembly source file.
+     * @param outputListingFilePath Path of the listing file, or null to skip the listing altogether.
+     * @param outputInstructionFilePath Path of the encoded instruction file.
+     * @param codec Compression applied to both output files, or null to choose it from the extension of each file.
+     * @throws IOException Exception raised while opening the files.
+     */
+    public MIPSAssembler(String inputFilePath,String outputListingFilePath, String outputInstructionFilePath, OutputCodec codec) throws IOException {
         file = new File(inputFilePath);
         parser = new Parser(inputFilePath);
         symbolTable = new HashMap<>();
-        File listingFile = new File(outputListingFilePath);
-        File instructionFile = new File(outputInstructionFilePath);
-        this.listFileWriter = new BufferedWriter(new FileWriter(listingFile));
-        this.instructionFileWriter = new BufferedWriter((new FileWriter(instructionFile)));
+        loadSizes = new int[64];
+        if (outputListingFilePath != null)
+            this.listFileWriter = openOutput(outputListingFilePath, codec);
+        this.instructionFileWriter = openOutput(outputInstructionFilePath, codec);
+    }
+
+    /**
+     * Enables the static cycle estimate: each line of the listing is annotated with its predicted stalls, and a per
+     * label summary is written after the symbol table.
+     * @param estimator The estimator configured with the modelled pipeline.
+     */
+    public void setPipelineEstimator(PipelineEstimator estimator) {
+        this.estimator = estimator;
+    }
+
+    /**
+     * Enables the source map: the source line of every instruction is recorded, and written with the labels when
+     * the assembly succeeds.
+     * @param sourceMap The writer of the source map file.
+     */
+    public void setSourceMapWriter(SourceMapWriter sourceMap) {
+        this.sourceMap = sourceMap;
+    }
+
+    /**
+     * Enables the statistics report: the instruction mix, branch distances and label fan-in are collected while the
+     * instructions are encoded, and merged into the report when the assembly succeeds.
+     * @param statistics The collector of the statistics, writing the report.
+     */
+    public void setInstructionStatistics(InstructionStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    // Opens an output file, compressing it on the fly with the given codec or the one matching its extension
+    private static Writer openOutput(String filePath, OutputCodec codec) throws IOException {
+        if (codec == null)
+            codec = OutputCodec.forFile(filePath);
+        return new BufferedWriter(new OutputStreamWriter(codec.wrap(new FileOutputStream(filePath))), 1 << 16);
     }
 
     /**
@@ -31,6 +86,7 @@ public class MIPSAssembler implements Closeable {
      * Execute two passes on the input file: the first one to build the symbol table, and the second one to actually
      * parse the instruction statements.
      * @return true if the assembly was a success, false otherwise.
+     * @throws OutputFileException Exception raised while writing the source map or the statistics report.
      * @throws IOException
      */
     public boolean assemble() throws IOException {
@@ -40,26 +96,68 @@ public class MIPSAssembler implements Closeable {
             try {
                 int address = -4;
                 Instruction instruction;
+                ArrayList<Instruction> expansion = new ArrayList<>();
+                loadCount = 0;
+                forgetSetConstants();
+                if (statistics != null)
+                    statistics.start(symbolTable);
 
                 while (parser.parseAllTokens()) {
                     instruction = null;
+                    expansion.clear();
 
                     if (parser.parseIsValid()) {
 
                         if (parser.getOperation() != null) {
                             address += 4;
                             ArrayList<String> args = parser.getInstructionAsList(symbolTable);
-                            instruction = new Instruction(address,args);
+                            if (PseudoInstruction.isPseudo(args.get(0))) {
+                                // expanded to the same number of instructions as the first pass computed
+                                int size = PseudoInstruction.isVariableSize(args.get(0)) ? loadSizes[loadCount++] : 0;
+                                int expandedAddress = address;
+                                for (ArrayList<String> fields : PseudoInstruction.expand(args, size)) {
+                                    expansion.add(new Instruction(expandedAddress, fields));
+                                    expandedAddress += 4;
+                                }
+                                instruction = expansion.get(0);
+                            } else {
+                                instruction = new Instruction(address,args);
+                            }
+                            if (estimator != null)
+                                estimator.issue(instruction);
+                            if (sourceMap != null)
+                                sourceMap.add(address, parser.getLineNumber());
+                            if (statistics != null)
+                                statistics.add(instruction);
+                        } else if (parser.getDirective() != null) {
+                            defineConstant();
                         }
                         outputCurrentLine(address, instruction, null);
 
+                        // the following instructions of a pseudo-instruction expansion get lines of their own
+                        for (int i = 1; i < expansion.size(); i++) {
+                            address += 4;
+                            if (estimator != null)
+                                estimator.issue(expansion.get(i));
+                            if (sourceMap != null)
+                                sourceMap.add(address, parser.getLineNumber());
+                            if (statistics != null)
+                                statistics.add(expansion.get(i));
+                            outputExpansionLine(address, expansion.get(i));
+                        }
+
                     } else {
                         throw new InvalidLineException("Line not valid \"" + parser.getLine() + "\"");
                     }
                 }
                 outputSymbolTable();
+                outputPipelineSummary();
+                if (sourceMap != null)
+                    writeSourceMap();
+                if (statistics != null)
+                    writeStatistics();
 
-            } catch (InvalidLineException | UnknownInstructionException | UnknownRegisterException | InstructionFormatException | UndefinedSymbolException | NumberFormatException e) {
+            } catch (InvalidLineException | UnknownInstructionException | UnknownRegisterException | InstructionFormatException | UndefinedSymbolException | InvalidExpressionException | SymbolAlreadyDefinedException | NumberFormatException e) {
                 outputCurrentLine(null, null, e.getMessage());
                 return false;
             }
@@ -68,49 +166,172 @@ public class MIPSAssembler implements Closeable {
         return ret;
     }
 
+    /**
+     * First pass: builds the symbol table by computing the address of every label, and the value of every constant.
+     * Pseudo-instructions can expand to several instructions. When the size of a li or la depends on a label defined
+     * later, the shortest sequence is assumed and the pass is repeated with the addresses found, growing the sequences
+     * that turn out too short until no size changes. This gives the smallest layout in which every li and la can hold
+     * its value.
+     * @return true if the symbol table could be built, false if an error was written in the listing.
+     * @throws IOException Exception raised while reading the input file.
+     */
     private boolean buildSymbolTable() throws IOException {
         boolean ret = true;
 
         try {
-            int address = -4;
-            HashMap<String, Symbol> symbolsWaitList = new HashMap<>();
-
-            while( parser.parseAllTokens() ) {
-                if (parser.parseIsValid()) {
-
-                    String token;
-                    if ((token = parser.getLabel()) != null) {
-                        Symbol duplicate;
-                        if ((duplicate = symbolTable.get(token)) != null)
-                            throw new SymbolAlreadyDefinedException( "Symbol \"" + token + "\" on line " + parser.getLineNumber() + " is already defined on line " + duplicate.getLine() );
-                        else if ((duplicate = symbolsWaitList.get(token)) != null) {
-                            throw new SymbolAlreadyDefinedException( "Symbol \"" + token + "\" on line " + parser.getLineNumber() + " is already defined on line " + duplicate.getLine() );
-                        } else {
-                            symbolsWaitList.put(token, new Symbol(token, -1, parser.getLineNumber()));
+            boolean firstIteration = true;
+            do {
+                int address = -4;
+                HashMap<String, Symbol> symbolsWaitList = new HashMap<>();
+                loadCount = 0;
+                loadSizesChanged = false;
+                forgetSetConstants();
+
+                while( parser.parseAllTokens() ) {
+                    if (parser.parseIsValid()) {
+
+                        String token;
+                        if ((token = parser.getLabel()) != null) {
+                            Symbol duplicate;
+                            if ((duplicate = symbolTable.get(token)) != null && duplicate.getLine() != parser.getLineNumber()) // the same label is found again when the pass is repeated
+                                throw new SymbolAlreadyDefinedException( "Symbol \"" + token + "\" on line " + parser.getLineNumber() + " is already defined on line " + duplicate.getLine() );
+                            else if ((duplicate = symbolsWaitList.get(token)) != null) {
+                                throw new SymbolAlreadyDefinedException( "Symbol \"" + token + "\" on line " + parser.getLineNumber() + " is already defined on line " + duplicate.getLine() );
+                            } else {
+                                symbolsWaitList.put(token, new Symbol(token, -1, parser.getLineNumber()));
+                            }
                         }
-                    }
 
-                    if (parser.getOperation() != null) {
-                        address += 4;
+                        if ((token = parser.getDirective()) != null) {
+                            Symbol duplicate;
+                            if (parser.getArgument1() != null && (duplicate = symbolsWaitList.get(parser.getArgument1())) != null)
+                                throw new SymbolAlreadyDefinedException( "Symbol \"" + parser.getArgument1() + "\" on line " + parser.getLineNumber() + " is already defined on line " + duplicate.getLine() );
+
+                            // the labels preceding the directive mark the next instruction, and can be used by its expression
+                            for (Symbol s : symbolsWaitList.values())
+                                s.setAddress(address + 4);
+                            symbolTable.putAll(symbolsWaitList);
+                            symbolsWaitList.clear();
+
+                            defineConstant();
+                        }
+
+                        if (parser.getOperation() != null) {
+                            address += 4;
+
+                            for (Symbol s : symbolsWaitList.values())
+                                s.setAddress(address);
 
-                        for (Symbol s : symbolsWaitList.values())
-                            s.setAddress(address);
+                            symbolTable.putAll(symbolsWaitList);
+                            symbolsWaitList.clear();
 
-                        symbolTable.putAll(symbolsWaitList);
-                        symbolsWaitList.clear();
+                            address += 4 * (operationSize(firstIteration) - 1);
+                        }
                     }
                 }
-            }
-        } catch (SymbolAlreadyDefinedException e) {
+
+                parser.reset();
+                firstIteration = false;
+            } while (loadSizesChanged);
+
+        } catch (SymbolAlreadyDefinedException | InvalidLineException | UndefinedSymbolException | InvalidExpressionException e) {
             outputCurrentLine(null, null, e.getMessage());
             ret = false;
+            parser.reset();
         }
 
-        parser.reset();
-
         return ret;
     }
 
+    /**
+     * Removes the constants defined with .set from the symbol table before a pass, so that each line sees the value
+     * of the last definition preceding it, and a use before any definition is reported as undefined, rather than
+     * using the value left by the end of the previous pass.
+     */
+    private void forgetSetConstants() {
+        Iterator<Symbol> symbols = symbolTable.values().iterator();
+        while (symbols.hasNext()) {
+            if (symbols.next().getKind() == Symbol.Kind.SET)
+                symbols.remove();
+        }
+    }
+
+    /**
+     * Computes the number of instructions the operation on the current line assembles to. The sizes of li and la are
+     * recorded, so that the second pass expands them to the same length.
+     * @param firstIteration Whether the first pass is run for the first time, the sizes of li and la being then unknown.
+     * @return The number of instructions.
+     */
+    private int operationSize(boolean firstIteration) {
+        String operation = parser.getOperation();
+        if (!PseudoInstruction.isPseudo(operation))
+            return 1;
+        ArrayList<String> args = parser.getArgumentsList();
+        if (!PseudoInstruction.isVariableSize(operation))
+            return PseudoInstruction.size(operation, args);
+
+        int needed = 1; // a malformed li or la is reported by the second pass
+        if (args.size() == 2) {
+            try {
+                needed = PseudoInstruction.loadSize(parser.evaluate(args.get(1), symbolTable));
+            } catch (UndefinedSymbolException e) {
+                needed = 1; // label defined later: the shortest sequence, grown if the address found does not fit
+                if (firstIteration)
+                    loadSizesChanged = true;
+            } catch (InvalidExpressionException e) {
+                needed = 1;
+            }
+        }
+
+        if (loadCount == loadSizes.length)
+            loadSizes = Arrays.copyOf(loadSizes, loadCount * 2);
+        if (firstIteration) {
+            loadSizes[loadCount] = needed;
+        } else if (needed > loadSizes[loadCount]) { // never shrunk: a longer sequence can load any value
+            loadSizes[loadCount] = needed;
+            loadSizesChanged = true;
+        }
+        return loadSizes[loadCount++];
+    }
+
+    /**
+     * Handles the .eqv and .set directives on the current line, binding a symbol to the value of a constant expression.
+     * Called on both passes: the first one defines the symbol, the second one re-evaluates it so that a symbol
+     * redefined by several .set directives has, on each line, the value of the last directive preceding it.
+     * @throws InvalidLineException The directive is unknown or its arguments are not a name and an expression.
+     * @throws SymbolAlreadyDefinedException The name is already used by a label or by a constant that cannot be redefined.
+     * @throws UndefinedSymbolException The expression references a symbol that is not (yet) defined.
+     * @throws InvalidExpressionException The expression is not well formed.
+     */
+    private void defineConstant() throws InvalidLineException, SymbolAlreadyDefinedException, UndefinedSymbolException, InvalidExpressionException {
+        String directive = parser.getDirective();
+        Symbol.Kind kind;
+        switch (directive) {
+            case ".eqv":
+                kind = Symbol.Kind.EQV;
+                break;
+            case ".set":
+                kind = Symbol.Kind.SET;
+                break;
+            default:
+                throw new InvalidLineException("Unknown directive \"" + directive + "\"");
+        }
+
+        String name = parser.getArgument1();
+        String expression = parser.getArgument2();
+        if (name == null || expression == null || parser.getArgument3() != null)
+            throw new InvalidLineException("Incorrect directive format: expected \"" + directive + " name, expression\"");
+
+        int value = parser.evaluate(expression, symbolTable);
+        Symbol existing = symbolTable.get(name);
+        if (existing == null)
+            symbolTable.put(name, new Symbol(name, value, parser.getLineNumber(), kind));
+        else if (existing.getLine() == parser.getLineNumber() || (existing.getKind() == Symbol.Kind.SET && kind == Symbol.Kind.SET))
+            existing.setAddress(value);
+        else
+            throw new SymbolAlreadyDefinedException( "Symbol \"" + name + "\" on line " + parser.getLineNumber() + " is already defined on line " + existing.getLine() );
+    }
+
     /**
      * Writes a line corresponding to the current line parsed into the listing file.
      * If an instruction is on the current line, its 32 bit hexadecimal encoding is written in the instruction output file.
@@ -125,12 +346,16 @@ public class MIPSAssembler implements Closeable {
         if(errorMessage == null) {
             if (instruction != null) { // there is an instruction at this line, and we want to print the address and instruction hexadecimal at the beginning of the listing file line
                 try {
+                    int encoding = instruction.toInt();
+                    writeHex(this.instructionFileWriter, encoding); // OUTPUT: the instruction 32 bit hexadecimal encoding is written in the instruction output file
+                    this.instructionFileWriter.write(System.lineSeparator());
+
+                    if (this.listFileWriter == null)
+                        return;
                     listLine = String.format("%#010x  %#010x",
                             address,
-                            instruction.toInt()
+                            encoding
                     );
-
-                    this.instructionFileWriter.write(String.format("%#010x%n", instruction.toInt())); // OUTPUT: the instruction 32 bit hexadecimal encoding is written in the instruction output file
                 }catch (Exception e){
                     e.printStackTrace();
                 }
@@ -138,6 +363,16 @@ public class MIPSAssembler implements Closeable {
         }else{
             listLine = errorMessage;
         }
+
+        if (this.listFileWriter == null) { // without listing, only the errors are reported, on the standard error
+            if (errorMessage != null)
+                System.err.println("Line " + parser.getLineNumber() + ": " + errorMessage);
+            return;
+        }
+
+        if (this.estimator != null) // the predicted stalls are written in a column of their own after the encoding
+            listLine = String.format("%-22s  %-10s", listLine, instruction != null && errorMessage == null ? this.estimator.getAnnotation() : "");
+
         // all arguments present are collected
         String arguments = String.format("%s%s%s",
                 this.parser.getArgument1() == null ? "" : this.parser.getArgument1(),
@@ -149,7 +384,7 @@ public class MIPSAssembler implements Closeable {
         listLine = String.format("%-22s  %10s  %-3s  %-15s  %s%n",
                 listLine,
                 this.parser.getLabel() == null ? "" : this.parser.getLabel() + ":",
-                this.parser.getOperation() == null ? "" : this.parser.getOperation(),
+                this.parser.getOperation() != null ? this.parser.getOperation() : this.parser.getDirective() != null ? this.parser.getDirective() : "",
                 arguments,
                 this.parser.getComment() == null ? "" : this.parser.getComment()
         );
@@ -158,7 +393,58 @@ public class MIPSAssembler implements Closeable {
 
     }
 
+    /**
+     * Writes a line for an instruction following the first one of a pseudo-instruction expansion. The source of the
+     * pseudo-instruction being on the line of its first instruction, this line only has the address and encoding.
+     * @param address The address of the instruction.
+     * @param instruction The instruction.
+     * @throws IOException Exception raised by the writer
+     */
+    private void outputExpansionLine(int address, Instruction instruction) throws IOException {
+        int encoding = instruction.toInt();
+        writeHex(this.instructionFileWriter, encoding);
+        this.instructionFileWriter.write(System.lineSeparator());
+
+        if (this.listFileWriter == null)
+            return;
+        String listLine = String.format("%#010x  %#010x", address, encoding);
+        if (this.estimator != null)
+            listLine = String.format("%-22s  %-10s", listLine, this.estimator.getAnnotation());
+        this.listFileWriter.write(listLine.trim());
+        this.listFileWriter.write(System.lineSeparator());
+    }
+
+    // Writes a value as 0x followed by 8 hexadecimal digits, same as the %#010x format without its parsing cost
+    private void writeHex(Writer writer, int value) throws IOException {
+        hexBuffer[0] = '0';
+        hexBuffer[1] = 'x';
+        for (int i = 9; i >= 2; i--) {
+            hexBuffer[i] = Character.forDigit(value & 0xf, 16);
+            value >>>= 4;
+        }
+        writer.write(hexBuffer);
+    }
+
+    private void writeSourceMap() throws OutputFileException {
+        try {
+            sourceMap.write(file.getPath(), symbolTable);
+        } catch (IOException e) {
+            throw new OutputFileException("Cannot write the source map: " + e.getMessage());
+        }
+    }
+
+    private void writeStatistics() throws OutputFileException {
+        try {
+            statistics.write(file.getPath());
+        } catch (IOException e) {
+            throw new OutputFileException("Cannot write the statistics report: " + e.getMessage());
+        }
+    }
+
     private void outputSymbolTable() throws IOException {
+        if (this.listFileWriter == null)
+            return;
+
         TreeMap<String, Symbol> sortedSymbolTable = new TreeMap<>(symbolTable);
 
         this.listFileWriter.write(String.format("%n%n%s%n","Symbols:"));
@@ -167,6 +453,17 @@ public class MIPSAssembler implements Closeable {
         }
     }
 
+    private void outputPipelineSummary() throws IOException {
+        if (this.listFileWriter == null || this.estimator == null)
+            return;
+
+        this.listFileWriter.write(String.format("%n%n"));
+        for (String line : this.estimator.summary(symbolTable)) {
+            this.listFileWriter.write(line);
+            this.listFileWriter.write(System.lineSeparator());
+        }
+    }
+
     @Override
     public void close() throws IOException {
         try {
@@ -180,27 +477,10 @@ public class MIPSAssembler implements Closeable {
             instructionFileWriter = null;
         }
         try {
-            listFileWriter.close();
+            if (listFileWriter != null)
+                listFileWriter.close();
         } finally {
             listFileWriter = null;
         }
     }
 }
-
-class Symbol {
-    private String name;
-    private int address;
-    private int line;
-
-    Symbol(String name, int address, int line) {
-        this.name = name;
-        this.address = address;
-        this.line = line;
-    }
-
-    public void setAddress(int address) { this.address = address; }
-
-    public String getName() {return name; }
-    public int getAddress() { return address; }
-    public int getLine() { return line; }
-}
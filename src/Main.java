@@ -1,3 +1,4 @@
+import java.util.ArrayList;
 
 public class Main {
 
@@ -7,19 +8,69 @@ public class Main {
         String listingFilePath = "listing.out";
         String outputFilePath = "instructions.out";
 
-        if(args.length == 1){ // if only one argument is passed to the program, it is considered to be the input file
-            inputFilePath = args[0];
-        }else if(args.length >= 3){ // if three or more arguments are passed, the first three are considered to be the input, listing, and output respectively, the rest is ignored
-            inputFilePath = args[0];
-            listingFilePath = args[1];
-            outputFilePath = args[2];
+        // options, which can be given anywhere among the file paths:
+        //   --no-listing          the listing file is not written, only the encoded instructions
+        //   --compress=<codec>    both output files are compressed with the codec (gzip, zlib or none), instead of
+        //                         according to their extension (.gz, .zz)
+        //   --pipeline[=<config>] the listing is annotated with a static cycle estimate on an in-order pipeline,
+        //                         configured by e.g. stages=5,load-use=1,branch=1,delay-slots=0,forwarding=on
+        //   --source-map=<path>   an address to source line map is written, to be queried with java SourceMap
+        //   --stats=<path>        the instruction mix and control flow statistics are merged into a CSV report
+        boolean listing = true;
+        OutputCodec codec = null;
+        PipelineEstimator estimator = null;
+        SourceMapWriter sourceMap = null;
+        InstructionStatistics statistics = null;
+        ArrayList<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--no-listing")) {
+                listing = false;
+            } else if (arg.startsWith("--compress=")) {
+                codec = OutputCodec.forName(arg.substring("--compress=".length()));
+                if (codec == null) {
+                    System.err.println("Unknown codec " + arg.substring("--compress=".length()));
+                    return;
+                }
+            } else if (arg.equals("--pipeline") || arg.startsWith("--pipeline=")) {
+                try {
+                    estimator = PipelineEstimator.parse(arg.substring(Math.min(arg.length(), "--pipeline=".length())));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    return;
+                }
+            } else if (arg.startsWith("--source-map=")) {
+                sourceMap = new SourceMapWriter(arg.substring("--source-map=".length()));
+            } else if (arg.startsWith("--stats=")) {
+                statistics = new InstructionStatistics(arg.substring("--stats=".length()));
+            } else {
+                paths.add(arg);
+            }
         }
 
-        try( MIPSAssembler asm = new MIPSAssembler(inputFilePath,listingFilePath,outputFilePath) ) {
-            asm.assemble();
-        } catch (Exception ignored) {
+        if(paths.size() == 1){ // if only one argument is passed to the program, it is considered to be the input file
+            inputFilePath = paths.get(0);
+        }else if(paths.size() >= 3){ // if three or more arguments are passed, the first three are considered to be the input, listing, and output respectively, the rest is ignored
+            inputFilePath = paths.get(0);
+            listingFilePath = paths.get(1);
+            outputFilePath = paths.get(2);
+        }
 
+        boolean assembled = true;
+        try( MIPSAssembler asm = new MIPSAssembler(inputFilePath, listing ? listingFilePath : null, outputFilePath, codec) ) {
+            asm.setPipelineEstimator(estimator);
+            asm.setSourceMapWriter(sourceMap);
+            asm.setInstructionStatistics(statistics);
+            assembled = asm.assemble();
+        } catch (OutputFileException e) { // the program was assembled, but an output asked for is missing
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (Exception e) { // not an error of the assembled program, which would be in the listing
+            System.err.println("Assembly aborted: " + e);
+            System.exit(1);
         }
+        // the error is in the listing, or on the standard error without listing: the status lets batch runs notice it
+        if (!assembled)
+            System.exit(1);
     }
 
 }
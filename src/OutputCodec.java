@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression applied on the fly to an output file of the assembler.
+ * Codecs are registered under a name and a file extension: an output file is compressed with the codec whose
+ * extension it ends with, unless a codec is explicitly chosen by name. gzip (.gz) and zlib (.zz) are built in,
+ * other codecs can be added with register().
+ */
+public interface OutputCodec {
+
+    // Built in codecs. Anonymous classes rather than lambdas, whose bootstrap would slow down the startup
+    OutputCodec NONE = new OutputCodec() {
+        public OutputStream wrap(OutputStream stream) { return stream; }
+    };
+    OutputCodec GZIP = new OutputCodec() {
+        public OutputStream wrap(OutputStream stream) throws IOException { return new GZIPOutputStream(stream, 1 << 16); }
+    };
+    OutputCodec DEFLATE = new OutputCodec() {
+        public OutputStream wrap(OutputStream stream) { return new DeflaterOutputStream(stream); }
+    };
+
+    /**
+     * Wraps the stream of an output file so that everything written to it is compressed.
+     * @param stream The stream writing the output file.
+     * @return The compressing stream, closing it finishes the compressed data and closes the file stream.
+     * @throws IOException Exception raised while writing the header of the compressed format.
+     */
+    OutputStream wrap(OutputStream stream) throws IOException;
+
+    /**
+     * Registers a codec.
+     * @param name The name used to select the codec explicitly.
+     * @param extension The extension of the output files compressed with the codec, including the dot.
+     * @param codec The codec.
+     */
+    static void register(String name, String extension, OutputCodec codec) {
+        Registry.byName.put(name, codec);
+        Registry.byExtension.put(extension, codec);
+    }
+
+    /**
+     * @param name The name of a registered codec, "none" for no compression.
+     * @return The codec, or null if no codec is registered under that name.
+     */
+    static OutputCodec forName(String name) {
+        return Registry.byName.get(name);
+    }
+
+    /**
+     * @param filePath The path of an output file.
+     * @return The codec registered for the extension of the file, or NONE if there is none.
+     */
+    static OutputCodec forFile(String filePath) {
+        for (Map.Entry<String, OutputCodec> e : Registry.byExtension.entrySet()) {
+            if (filePath.endsWith(e.getKey()))
+                return e.getValue();
+        }
+        return NONE;
+    }
+
+    // Holder of the registered codecs, interfaces cannot have mutable static fields of their own
+    class Registry {
+        private static final Map<String, OutputCodec> byName = new LinkedHashMap<>();
+        private static final Map<String, OutputCodec> byExtension = new LinkedHashMap<>();
+
+        static {
+            byName.put("none", NONE);
+            byName.put("gzip", GZIP);
+            byName.put("zlib", DEFLATE);
+            byExtension.put(".gz", GZIP);
+            byExtension.put(".zz", DEFLATE);
+        }
+
+        private Registry() {}
+    }
+}
@@ -0,0 +1,12 @@
+import java.io.IOException;
+
+/**
+ * Signals that an additional output requested on the command line (source map, statistics report) could not be
+ * written. Unlike the errors of the assembled program, which go to the listing, it is reported on the standard error.
+ */
+public class OutputFileException extends IOException {
+    public OutputFileException(){}
+    public OutputFileException(String str){
+        super(str);
+    }
+}
@@ -5,7 +5,6 @@ import java.nio.file.Path;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -19,6 +18,8 @@ public class Parser implements Closeable {
     private Path filePath;
     private BufferedReader reader;
 
+    private ExpressionEvaluator evaluator; // Kept across passes, so every expression is compiled only once
+
     // Matchers for the regex patterns
     private boolean parseIsValid;
     private Matcher allTokensMatcher;
@@ -26,14 +27,26 @@ public class Parser implements Closeable {
 //    private Matcher lineLevelMatcher;
 //    private boolean lineLevelMatched;
 
+    // Names of the regex groups capturing each token. Being constants, the patterns below are concatenated by the
+    // compiler rather than at class initialization, which noticeably shortens startup
+    private static final String labelTag = "label";
+    private static final String instructionTag = "instruction";
+    private static final String operationTag = "operation";
+    private static final String directiveTag = "directive";
+    private static final String argument1Tag = "argument1";
+    private static final String argument2Tag = "argument2";
+    private static final String argument3Tag = "argument3";
+    private static final String commentTag = "comment";
+
     public enum TokenType {
-        LABEL_DEF("label"),
-        INSTRUCTION("instruction"),
-        OPERATION("operation"),
-        ARGUMENT1("argument1"),
-        ARGUMENT2("argument2"),
-        ARGUMENT3("argument3"),
-        COMMENT("comment");
+        LABEL_DEF(labelTag),
+        INSTRUCTION(instructionTag),
+        OPERATION(operationTag),
+        DIRECTIVE(directiveTag),
+        ARGUMENT1(argument1Tag),
+        ARGUMENT2(argument2Tag),
+        ARGUMENT3(argument3Tag),
+        COMMENT(commentTag);
 
         final String tag;
 
@@ -44,32 +57,44 @@ public class Parser implements Closeable {
 
     private static final String labelRE = "[\\w.&&[\\D]][\\w.]*";
 
-    private static final String labelDefRE = "(?:^(?<" + TokenType.LABEL_DEF.tag + ">" + labelRE + ")\\s*:)?";
+    private static final String labelDefRE = "(?:^(?<" + labelTag + ">" + labelRE + ")\\s*:)?";
 
-    private static final String operationRE = "(?:(?<=\\s)(?<" + TokenType.OPERATION.tag + ">[\\w&&[^_]][\\w&&[^_]]*)(?=[\\s]|$))";
+    private static final String operationRE = "(?:(?<=\\s)(?<" + operationTag + ">[\\w&&[^_]][\\w&&[^_]]*)(?=[\\s]|$))";
+
+    private static final String directiveRE = "(?:(?<=\\s|^)(?<" + directiveTag + ">\\.[a-zA-Z]+)(?=[\\s]|$))";
 
     private static final String registerByIndexRE = "[12]\\d?|3[01]?|[04-9]";
-    private static final String registerByNameRE = "a[t0-3]|v[01]|t\\d|s[p0-7]|k[01]|gp|fp|ra|zero";
+    private static final String registerByNameRE = InstructionSet.REGISTER_NAMES_RE;
     private static final String registerRE = "\\$(?:" + registerByIndexRE + "|" + registerByNameRE + ")";
 
     private static final String literalRE = "(?:0(?:x[\\da-fA-F]+|[0-7]+)?|-?[1-9]\\d*)";
 
-    private static final String registerWithOffsetRE = "(?<offset>" + literalRE + ")" + "\\((?<register>" + registerRE + ")\\)";
+    private static final String registerWithOffsetRE = "(?<offset>.*?)\\s*\\((?<register>" + registerRE + ")\\)";
 
     //private static final String argumentRE = "(?:" + registerRE + "|" + labelRE + "|" + literalRE + "(?:\\(" + registerRE + "\\))?)";
-    private static final String argumentRE = "[^\\s,#]+";
+    //private static final String argumentRE = "[^\\s,#]+";
+    private static final String argumentRE = "[^\\s,#](?:[^,#]*[^\\s,#])?"; // may contain spaces, as in constant expressions
 
-    private static final String argumentsListRE = "(?<" + TokenType.ARGUMENT1.tag + ">" + argumentRE + ")"
-                               + "(?:\\s*,\\s*" + "(?<" + TokenType.ARGUMENT2.tag + ">" + argumentRE + ")"
-                               + "(?:\\s*,\\s*" + "(?<" + TokenType.ARGUMENT3.tag + ">" + argumentRE + ")" + ")?)?";
+    private static final String argumentsListRE = "(?<" + argument1Tag + ">" + argumentRE + ")"
+                               + "(?:\\s*,\\s*" + "(?<" + argument2Tag + ">" + argumentRE + ")"
+                               + "(?:\\s*,\\s*" + "(?<" + argument3Tag + ">" + argumentRE + ")" + ")?)?";
 
-    private static final String instructionRE = "(?:" + operationRE
+    private static final String instructionRE = "(?:(?:" + operationRE + "|" + directiveRE + ")"
                                               + "(?:\\s*" + argumentsListRE + ")?)?";
-    //private static final String unparsedInstructionRE = "(?<" + TokenType.INSTRUCTION.tag + ">[^\\s](?:[^#][^\\s])?)";
+    //private static final String unparsedInstructionRE = "(?<" + instructionTag + ">[^\\s](?:[^#][^\\s])?)";
 
-    private static final String commentRE = "(?:(?<" + TokenType.COMMENT.tag + ">#.*[^\\s])\\s*$)?";
+    private static final String commentRE = "(?:(?<" + commentTag + ">#.*[^\\s])\\s*$)?";
 
     private static final String completeLineRE = labelDefRE + "\\s*" + instructionRE + "\\s*" + commentRE;
+    private static final Pattern completeLinePattern = Pattern.compile( completeLineRE ); // compiled once, shared by all the parsers
+
+    private static final String tabAsSpaces = "    ";
+
+    // Holder of the <offset>(<register>) pattern, compiled on the first argument containing a parenthesis rather than
+    // with the line pattern at startup, programs without loads and stores never needing it
+    private static class RegisterWithOffset {
+        static final Pattern pattern = Pattern.compile(registerWithOffsetRE);
+    }
     //private static final String lineLevelRE = labelDefRE + "\\s*" + unparsedInstructionRE + "\\s*" + commentRE;
 
 
@@ -80,8 +105,10 @@ public class Parser implements Closeable {
         this.filePath = Paths.get( filePath );
         reader = Files.newBufferedReader( this.filePath );
 
+        evaluator = new ExpressionEvaluator();
+
         parseIsValid = false;
-        allTokensMatcher = Pattern.compile( completeLineRE ).matcher("");
+        allTokensMatcher = completeLinePattern.matcher("");
         allTokensMatched = false;
         /*lineLevelMatcher = Pattern.compile( lineLevelRE ).matcher("");
         lineLevelMatched = false;*/
@@ -105,7 +132,7 @@ public class Parser implements Closeable {
         if( (line = reader.readLine()) != null ) {
             lineCnt++;
 
-            line = line.replace( "\t", String.join("", Collections.nCopies(4, " ")) );
+            line = line.replace( "\t", tabAsSpaces );
             allTokensMatcher.reset(line);
 
             /*// Reset other matchers renders invalid
@@ -124,7 +151,7 @@ public class Parser implements Closeable {
         if( (line = reader.readLine()) != null ) {
             lineCnt++;
 
-            line = line.replace( "\t", String.join("", Collections.nCopies(4, " ")) );
+            line = line.replace( "\t", tabAsSpaces );
             lineLevelMatcher.reset(line);
 
             // Reset other matchers rendered obsolete
@@ -181,6 +208,10 @@ public class Parser implements Closeable {
         return allTokensMatched ? allTokensMatcher.group(TokenType.OPERATION.tag) : null;
     }
 
+    public String getDirective() {
+        return allTokensMatched ? allTokensMatcher.group(TokenType.DIRECTIVE.tag) : null;
+    }
+
     public String getArgument1() {
         return allTokensMatched ? allTokensMatcher.group(TokenType.ARGUMENT1.tag) : null;
     }
@@ -208,7 +239,15 @@ public class Parser implements Closeable {
         return args;
     }
 
-    public ArrayList<String> getInstructionAsList(Map<String, Symbol> symbolTable) throws UndefinedSymbolException {
+    /**
+     * Builds the list of the fields of the instruction on the current line, with every expression argument
+     * (immediate, offset, branch or jump target) replaced by its decimal value.
+     * @param symbolTable The table used to resolve the labels and constants referenced by the arguments.
+     * @return The instruction name followed by its arguments, or an empty list if the line has no instruction.
+     * @throws UndefinedSymbolException An argument references a symbol that is not defined.
+     * @throws InvalidExpressionException An argument is not a well formed expression.
+     */
+    public ArrayList<String> getInstructionAsList(Map<String, Symbol> symbolTable) throws UndefinedSymbolException, InvalidExpressionException {
         ArrayList<String> instruction = new ArrayList<>();
         String op;
         if( (op = getOperation()) != null ) {
@@ -216,29 +255,40 @@ public class Parser implements Closeable {
             ArrayList<String> args = getArgumentsList();
 
             for (String arg : args) {
-                Matcher offsetRegisterMatcher = Pattern.compile(registerWithOffsetRE).matcher(arg);
-                Matcher labelMatcher = Pattern.compile("^[^$\\-\\d]").matcher(arg);
-                // Handle arguments in the format <offset>($<register>)
-                if( offsetRegisterMatcher.matches() ) {
-                    instruction.add( offsetRegisterMatcher.group("offset") );
-                    instruction.add( offsetRegisterMatcher.group("register") );
-                }
-                // Handle label address resolution
-                else if( labelMatcher.find() ) {
-                    Symbol s = symbolTable.get(arg);
-                    if( s != null )
-                        instruction.add( Integer.toString( s.getAddress() ) );
-                    else
-                        throw new UndefinedSymbolException("Symbol \"" + arg + "\" is not defined");
-                }
-                else {
+                // Registers are passed as is, unknown ones are reported by the instruction
+                if( arg.startsWith("$") ) {
                     instruction.add(arg);
+                    continue;
                 }
+                // Handle arguments in the format <offset>($<register>), the offset being optional
+                if( arg.endsWith(")") && arg.indexOf("($") != -1 ) {
+                    Matcher offsetRegisterMatcher = RegisterWithOffset.pattern.matcher(arg);
+                    if( offsetRegisterMatcher.matches() ) {
+                        String offset = offsetRegisterMatcher.group("offset");
+                        instruction.add( offset.isEmpty() ? "0" : Integer.toString( evaluator.evaluate(offset, symbolTable) ) );
+                        instruction.add( offsetRegisterMatcher.group("register") );
+                        continue;
+                    }
+                }
+                // Literals, labels, constants and any expression combining them
+                instruction.add( Integer.toString( evaluator.evaluate(arg, symbolTable) ) );
             }
         }
         return instruction;
     }
 
+    /**
+     * Evaluates an assemble-time constant expression, i.e. the value of a .eqv or .set directive.
+     * @param expression The source text of the expression.
+     * @param symbolTable The table used to resolve the labels and constants referenced by the expression.
+     * @return The value of the expression.
+     * @throws UndefinedSymbolException The expression references a symbol that is not defined.
+     * @throws InvalidExpressionException The expression is not well formed.
+     */
+    public int evaluate(String expression, Map<String, Symbol> symbolTable) throws UndefinedSymbolException, InvalidExpressionException {
+        return evaluator.evaluate(expression, symbolTable);
+    }
+
     public String getComment() {
         /*if(allTokensMatched && !lineLevelMatched)
             return allTokensMatcher.group(TokenType.COMMENT.tag);
@@ -0,0 +1,193 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Static cycle estimate of the assembled program on a configurable in-order, single issue pipeline.
+ * The instructions are fed in program order as they are encoded. Each one is charged one cycle, plus the stalls
+ * waiting for its source registers (read after write hazards, load-use with forwarding) and the cycles lost when it
+ * redirects the control flow. Branches are statically predicted: backward branches (loops) are taken, forward ones
+ * are not, jumps are always taken.
+ */
+public class PipelineEstimator {
+
+    // Pipeline configuration
+    private int stages = 5;
+    private int loadUsePenalty = 1;
+    private int branchPenalty = 1;
+    private int delaySlots = 0;
+    private boolean forwarding = true;
+
+    private int[] readyCycle;        // first cycle at which an instruction reading each register can issue
+    private boolean[] loadedRegister; // whether the last write of each register was a load
+    private int lastIssue;           // issue cycle of the previous instruction
+    private int controlPenalty;      // cycles lost after the previous instruction
+
+    private int[] cumulativeCycles;  // cycles of the first n instructions, at index n
+    private int count;               // number of instructions estimated
+    private int[] blockEnds;         // indexes of the instructions following a branch, jump or call, in increasing order
+    private int blockEndCount;
+    private String annotation;       // stalls of the last instruction, as written in the listing
+
+    public PipelineEstimator() {
+        readyCycle = new int[32];
+        loadedRegister = new boolean[32];
+        lastIssue = -1;
+        cumulativeCycles = new int[1024];
+        blockEnds = new int[256];
+        annotation = "";
+    }
+
+    /**
+     * Builds an estimator from a configuration such as "stages=5,load-use=1,branch=1,delay-slots=0,forwarding=on".
+     * Every parameter is optional, the ones not given keep the values of the example.
+     * @param configuration Comma separated list of parameter=value, possibly empty.
+     * @return The configured estimator.
+     * @throws IllegalArgumentException A parameter is unknown or its value is not valid.
+     */
+    public static PipelineEstimator parse(String configuration) {
+        PipelineEstimator estimator = new PipelineEstimator();
+        for (String parameter : configuration.split(",")) {
+            if (parameter.isEmpty())
+                continue;
+            String[] pair = parameter.split("=", 2);
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Pipeline parameter \"" + parameter + "\" has no value");
+            try {
+                switch (pair[0]) {
+                    case "stages": estimator.stages = Integer.parseInt(pair[1]); break;
+                    case "load-use": estimator.loadUsePenalty = Integer.parseInt(pair[1]); break;
+                    case "branch": estimator.branchPenalty = Integer.parseInt(pair[1]); break;
+                    case "delay-slots": estimator.delaySlots = Integer.parseInt(pair[1]); break;
+                    case "forwarding":
+                        if (!pair[1].equals("on") && !pair[1].equals("off"))
+                            throw new IllegalArgumentException("Pipeline parameter forwarding must be on or off");
+                        estimator.forwarding = pair[1].equals("on");
+                        break;
+                    default: throw new IllegalArgumentException("Unknown pipeline parameter \"" + pair[0] + "\"");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Pipeline parameter " + pair[0] + " must be a number");
+            }
+        }
+        if (estimator.stages < 3 || estimator.loadUsePenalty < 0 || estimator.branchPenalty < 0 || estimator.delaySlots < 0)
+            throw new IllegalArgumentException("Pipeline needs at least 3 stages and positive penalties");
+        return estimator;
+    }
+
+    /**
+     * Issues the next instruction of the program in the modelled pipeline.
+     * @param instruction The instruction, following the previously issued one in program order.
+     * @return The number of cycles the instruction costs beyond its own issue cycle (stalls and control penalty).
+     */
+    public int issue(Instruction instruction) {
+        int earliest = lastIssue + 1 + controlPenalty;
+        int issue = earliest;
+        boolean waitsForLoad = false;
+        for (int i = 0; i < 2; i++) {
+            int source = instruction.getSourceRegister(i);
+            if (source != 0 && readyCycle[source] > issue) {
+                issue = readyCycle[source];
+                waitsForLoad = loadedRegister[source];
+            }
+        }
+        int stalls = issue - earliest;
+
+        int type = InstructionSet.getType(instruction.getId());
+        int destination = instruction.getDestinationRegister();
+        if (destination != 0) {
+            boolean load = type == InstructionSet.TYPE_LOAD;
+            // with forwarding a result is available to the next instruction, a loaded value only after the memory stage;
+            // without it, the next instructions must wait for the write back and read the register file in decode
+            readyCycle[destination] = forwarding ? issue + 1 + (load ? loadUsePenalty : 0) : issue + stages - 2;
+            loadedRegister[destination] = load;
+        }
+
+        boolean taken = type == InstructionSet.TYPE_JUMP || type == InstructionSet.TYPE_CALL
+                || (type == InstructionSet.TYPE_BRANCH && instruction.getImmediate() < 0);
+        controlPenalty = taken ? Math.max(0, branchPenalty - delaySlots) : 0;
+
+        lastIssue = issue;
+        if (count + 1 == cumulativeCycles.length)
+            cumulativeCycles = Arrays.copyOf(cumulativeCycles, cumulativeCycles.length * 2);
+        cumulativeCycles[count + 1] = cumulativeCycles[count] + 1 + stalls + controlPenalty;
+        count++;
+        if (type == InstructionSet.TYPE_BRANCH || type == InstructionSet.TYPE_JUMP || type == InstructionSet.TYPE_CALL) {
+            if (blockEndCount == blockEnds.length)
+                blockEnds = Arrays.copyOf(blockEnds, blockEndCount * 2);
+            blockEnds[blockEndCount++] = count;
+        }
+
+        annotation = (stalls == 0 ? "" : (waitsForLoad && forwarding ? "ld+" : "raw+") + stalls)
+                   + (stalls != 0 && controlPenalty != 0 ? " " : "")
+                   + (controlPenalty == 0 ? "" : "br+" + controlPenalty);
+        return stalls + controlPenalty;
+    }
+
+    /**
+     * @return The stalls of the last instruction issued, as annotated in the listing: "ld+n" cycles waiting for a load,
+     * "raw+n" waiting for another result, "br+n" lost by a taken branch or jump. Empty if the instruction costs one cycle.
+     */
+    public String getAnnotation() {
+        return annotation;
+    }
+
+    /**
+     * Summarizes the estimate for every label, from the label to the next one, for the whole program, and for every
+     * basic block. Blocks start at the first instruction, at every label and after every branch, jump or call.
+     * @param symbolTable The symbol table of the program, only its labels are considered.
+     * @return The lines of the summary.
+     */
+    public ArrayList<String> summary(Map<String, Symbol> symbolTable) {
+        ArrayList<Symbol> labels = new ArrayList<>();
+        for (Symbol s : symbolTable.values()) {
+            if (s.getKind() == Symbol.Kind.LABEL)
+                labels.add(s);
+        }
+        labels.sort(Symbol.BY_ADDRESS);
+
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add(String.format("Pipeline estimate: %d stages, forwarding %s, load-use penalty %d, branch penalty %d, %d delay slot(s)",
+                stages, forwarding ? "on" : "off", loadUsePenalty, branchPenalty, delaySlots));
+        lines.add(String.format("%-10s\t%12s\t%6s\t%6s", "", "instructions", "stalls", "cycles"));
+        for (int i = 0; i < labels.size(); i++) {
+            int start = Math.min(labels.get(i).getAddress() / 4, count);
+            int end = count;
+            for (int j = i + 1; j < labels.size(); j++) {
+                if (labels.get(j).getAddress() != labels.get(i).getAddress()) {
+                    end = Math.min(labels.get(j).getAddress() / 4, count);
+                    break;
+                }
+            }
+            lines.add(line(labels.get(i).getName(), start, end, 0));
+        }
+        lines.add(line("total", 0, count, count == 0 ? 0 : stages - 1)); // the first instruction takes as many cycles as there are stages
+
+        // basic blocks, merging the label addresses and the block ends recorded at issue, both in increasing order
+        lines.add("");
+        lines.add(String.format("%-10s\t%-10s\t%12s\t%6s\t%6s", "block", "label", "instructions", "stalls", "cycles"));
+        int start = 0, label = 0, end = 0;
+        while (start < count) {
+            while (label < labels.size() && labels.get(label).getAddress() / 4 <= start)
+                label++;
+            while (end < blockEndCount && blockEnds[end] <= start)
+                end++;
+            int next = count;
+            if (label < labels.size())
+                next = Math.min(next, labels.get(label).getAddress() / 4);
+            if (end < blockEndCount)
+                next = Math.min(next, blockEnds[end]);
+            String name = "";
+            for (int i = label - 1; i >= 0 && labels.get(i).getAddress() / 4 == start; i--)
+                name = labels.get(i).getName(); // the first of the labels marking the block
+            lines.add(String.format("%#010x\t%s", start * 4, line(name, start, next, 0)));
+            start = next;
+        }
+        return lines;
+    }
+
+    private String line(String name, int start, int end, int fill) {
+        int cycles = cumulativeCycles[end] - cumulativeCycles[start] + fill;
+        return String.format("%-10s\t%12d\t%6d\t%6d", name, end - start, cycles - (end - start) - fill, cycles);
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Pseudo-instructions accepted by the assembler, and their expansion into the shortest sequence of real instructions
+ * for the operands given. The two instruction sequences use the assembler temporary register $at.
+ *
+ *   li/la rt, value    addi rt, $zero, value             value fits in 16 signed bits
+ *                      ori  rt, $zero, value             value fits in 16 unsigned bits
+ *                      lui  rt, upper                    lower 16 bits of the value are all zero
+ *                      lui  rt, upper; ori rt, rt, lower otherwise
+ *   move rd, rs        addu rd, rs, $zero
+ *   neg  rd, rs        sub  rd, $zero, rs
+ *   not  rd, rs        nor  rd, rs, $zero
+ *   b    label         beq  $zero, $zero, label
+ *   blt/bgt/ble/bge    bgtz or blez when comparing with $zero allows it, slt $at + bne/beq $at otherwise
+ *
+ * The length of li and la depends on the value loaded, which may be a label not yet defined on the first pass:
+ * the assembler then computes their sizes iteratively (see MIPSAssembler.buildSymbolTable).
+ */
+public class PseudoInstruction {
+
+    private static final String ZERO = "$zero";
+    private static final String AT = "$at";
+
+    /**
+     * @param name An instruction name.
+     * @return true if the name is the one of a pseudo-instruction.
+     */
+    public static boolean isPseudo(String name) {
+        switch (name) {
+            case "li":
+            case "la":
+            case "move":
+            case "neg":
+            case "not":
+            case "b":
+            case "blt":
+            case "bgt":
+            case "ble":
+            case "bge":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param name An instruction name.
+     * @return true if the length of the expansion of the pseudo-instruction depends on the value of its operand.
+     */
+    public static boolean isVariableSize(String name) {
+        return name.equals("li") || name.equals("la");
+    }
+
+    /**
+     * @param value A value to load in a register.
+     * @return The number of instructions needed by li or la to load the value.
+     */
+    public static int loadSize(int value) {
+        return (value >= -0x8000 && value <= 0xffff) || (value & 0xffff) == 0 ? 1 : 2;
+    }
+
+    /**
+     * Number of instructions of the expansion of a pseudo-instruction whose size does not depend on a value.
+     * @param name The name of the pseudo-instruction.
+     * @param args The arguments of the pseudo-instruction, only registers are looked at.
+     * @return The number of instructions of the expansion.
+     */
+    public static int size(String name, ArrayList<String> args) {
+        if (args.size() < 2)
+            return 1;
+        boolean firstIsZero = InstructionSet.register(args.get(0)) == 0;
+        boolean secondIsZero = InstructionSet.register(args.get(1)) == 0;
+        switch (name) {
+            case "bgt":
+            case "ble":
+                return secondIsZero ? 1 : 2;
+            case "blt":
+            case "bge":
+                return firstIsZero ? 1 : 2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Expands a pseudo-instruction.
+     * @param rawFields The pseudo-instruction name followed by its arguments, expressions being already evaluated.
+     * @param size For li and la, the number of instructions the expansion must have, as computed on the first pass.
+     *             Ignored by the other pseudo-instructions.
+     * @return The field lists of the real instructions, in the format expected by the Instruction constructor.
+     * @throws InstructionFormatException The pseudo-instruction has too few or too many arguments, or the size given
+     *                                    for li or la is too small for the value.
+     * @throws NumberFormatException The value of li or la is not a number.
+     */
+    public static ArrayList<ArrayList<String>> expand(ArrayList<String> rawFields, int size) throws InstructionFormatException, NumberFormatException {
+        String name = rawFields.get(0);
+        int expected = name.equals("b") ? 1 : name.startsWith("b") ? 3 : 2;
+        if (rawFields.size() - 1 < expected)
+            throw new InstructionFormatException("Incorrect instruction format: Instruction has too few arguments");
+        if (rawFields.size() - 1 > expected)
+            throw new InstructionFormatException("Incorrect instruction format: Instruction has too many arguments");
+
+        ArrayList<ArrayList<String>> sequence = new ArrayList<>();
+        String a = rawFields.get(1);
+        String b = expected > 1 ? rawFields.get(2) : null;
+        String label = expected == 3 ? rawFields.get(3) : a;
+        boolean single = size(name, new ArrayList<>(rawFields.subList(1, rawFields.size()))) == 1;
+        switch (name) {
+            case "li":
+            case "la":
+                int value;
+                try {
+                    value = Integer.decode(b);
+                } catch (NumberFormatException e) {
+                    throw new NumberFormatException("Immediate field value is not a decimal or hexadecimal");
+                }
+                if (size == 1 && value >= -0x8000 && value <= 0x7fff) {
+                    sequence.add(fields("addi", a, ZERO, Integer.toString(value)));
+                } else if (size == 1 && value >= 0 && value <= 0xffff) {
+                    sequence.add(fields("ori", a, ZERO, Integer.toString(value)));
+                } else if (size == 1 && (value & 0xffff) == 0) {
+                    sequence.add(fields("lui", a, Integer.toString(value >>> 16)));
+                } else if (size == 1) { // a second instruction would shift every following address
+                    throw new InstructionFormatException("Incorrect instruction format: " + name + " of " + b + " does not fit in the one instruction reserved by the first pass");
+                } else {
+                    sequence.add(fields("lui", a, Integer.toString(value >>> 16)));
+                    sequence.add(fields("ori", a, a, Integer.toString(value & 0xffff)));
+                }
+                break;
+            case "move":
+                sequence.add(fields("addu", a, b, ZERO));
+                break;
+            case "neg":
+                sequence.add(fields("sub", a, ZERO, b));
+                break;
+            case "not":
+                sequence.add(fields("nor", a, b, ZERO));
+                break;
+            case "b":
+                sequence.add(fields("beq", ZERO, ZERO, label));
+                break;
+            case "bgt": // a > b
+                if (single) {
+                    sequence.add(fields("bgtz", a, label));
+                } else {
+                    sequence.add(fields("slt", AT, b, a));
+                    sequence.add(fields("bne", AT, ZERO, label));
+                }
+                break;
+            case "blt": // a < b, i.e. b > a
+                if (single) {
+                    sequence.add(fields("bgtz", b, label));
+                } else {
+                    sequence.add(fields("slt", AT, a, b));
+                    sequence.add(fields("bne", AT, ZERO, label));
+                }
+                break;
+            case "ble": // a <= b, i.e. not b < a
+                if (single) {
+                    sequence.add(fields("blez", a, label));
+                } else {
+                    sequence.add(fields("slt", AT, b, a));
+                    sequence.add(fields("beq", AT, ZERO, label));
+                }
+                break;
+            case "bge": // a >= b, i.e. b <= a
+                if (single) {
+                    sequence.add(fields("blez", b, label));
+                } else {
+                    sequence.add(fields("slt", AT, a, b));
+                    sequence.add(fields("beq", AT, ZERO, label));
+                }
+                break;
+        }
+        return sequence;
+    }
+
+    private static ArrayList<String> fields(String... fields) {
+        return new ArrayList<>(Arrays.asList(fields));
+    }
+}
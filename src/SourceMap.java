@@ -0,0 +1,175 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Address to source line map of an assembled program, answering which line and label an address (e.g. a faulting PC)
+ * comes from. The file is memory mapped and queried in place by binary search, without being loaded.
+ *
+ * File layout, all integers being 32 bit big-endian:
+ *   header   magic "MSM1", number of runs, number of labels, size of the string pool in bytes
+ *   runs     sorted by address, each: first address, line of the first instruction, number of instructions.
+ *            Instruction k of a run is at address + 4k, on line + k.
+ *   labels   sorted by address, each: address, offset of the name in the string pool
+ *   strings  each a 16 bit length followed by UTF-8 bytes, the source file path first (offset 0)
+ */
+public class SourceMap {
+
+    public static final int MAGIC = 0x4d534d31; // "MSM1"
+
+    private static final int HEADER_SIZE = 16;
+    private static final int RUN_SIZE = 12;
+    private static final int LABEL_SIZE = 8;
+
+    private ByteBuffer buffer;
+    private int runCount;
+    private int labelCount;
+    private int runsOffset;
+    private int labelsOffset;
+    private int stringsOffset;
+
+    private String sourceFilePath;
+    private String[] labelNames; // decoded on first use
+
+    /**
+     * Maps a source map file in memory.
+     * @param filePath The path of the source map file.
+     * @throws IOException The file cannot be read or is not a source map.
+     */
+    public SourceMap(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("\"" + filePath + "\" is not a source map");
+        runCount = buffer.getInt(4);
+        labelCount = buffer.getInt(8);
+        runsOffset = HEADER_SIZE;
+        labelsOffset = runsOffset + runCount * RUN_SIZE;
+        stringsOffset = labelsOffset + labelCount * LABEL_SIZE;
+        if (stringsOffset + buffer.getInt(12) > buffer.limit())
+            throw new IOException("\"" + filePath + "\" is truncated");
+
+        sourceFilePath = string(0);
+        labelNames = new String[labelCount];
+    }
+
+    /**
+     * @return The path of the source file the map describes.
+     */
+    public String getSourceFilePath() {
+        return sourceFilePath;
+    }
+
+    /**
+     * Finds the source line of an instruction.
+     * @param address The address of the instruction.
+     * @return The line of the instruction in the source file, or -1 if no instruction is at that address.
+     */
+    public int lineOf(int address) {
+        // last run starting at or before the address
+        int low = 0, high = runCount - 1, run = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getInt(runsOffset + middle * RUN_SIZE) <= address) {
+                run = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (run == -1)
+            return -1;
+        int position = runsOffset + run * RUN_SIZE;
+        int distance = address - buffer.getInt(position);
+        if ((distance & 3) != 0 || (distance >>> 2) >= buffer.getInt(position + 8))
+            return -1;
+        return buffer.getInt(position + 4) + (distance >>> 2);
+    }
+
+    /**
+     * Finds the label an address belongs to, i.e. the last label defined at or before the address.
+     * @param address An address.
+     * @return The name of the label, or null if no label precedes the address.
+     */
+    public String labelOf(int address) {
+        int low = 0, high = labelCount - 1, label = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getInt(labelsOffset + middle * LABEL_SIZE) <= address) {
+                label = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (label == -1)
+            return null;
+        if (labelNames[label] == null)
+            labelNames[label] = string(buffer.getInt(labelsOffset + label * LABEL_SIZE + 4));
+        return labelNames[label];
+    }
+
+    // Decodes the string at an offset of the string pool
+    private String string(int offset) {
+        int position = stringsOffset + offset;
+        byte[] bytes = new byte[buffer.getShort(position) & 0xffff];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = buffer.get(position + 2 + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Command line lookup: java SourceMap mapFilePath [address ...]
+     * Prints "address file:line label" for each address given, or for each address read from the standard input
+     * (one per line) if none is given. Addresses are decimal, or hexadecimal with a 0x prefix.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: java SourceMap mapFilePath [address ...]");
+            System.exit(2);
+        }
+        SourceMap map = new SourceMap(args[0]);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++)
+                lookup(map, args[i], out);
+        } else {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in), 1 << 16);
+            String address;
+            while ((address = in.readLine()) != null) {
+                if (!address.trim().isEmpty())
+                    lookup(map, address.trim(), out);
+            }
+        }
+        out.flush();
+    }
+
+    private static void lookup(SourceMap map, String text, Writer out) throws IOException {
+        int address;
+        try {
+            address = (int) (long) Long.decode(text);
+        } catch (NumberFormatException e) {
+            out.write(text + " invalid address" + System.lineSeparator());
+            return;
+        }
+        int line = map.lineOf(address);
+        String label = map.labelOf(address);
+        StringBuilder result = new StringBuilder(64).append("0x");
+        String hex = Integer.toHexString(address);
+        for (int i = hex.length(); i < 8; i++)
+            result.append('0');
+        result.append(hex).append(' ').append(map.getSourceFilePath()).append(':').append(line == -1 ? "?" : Integer.toString(line));
+        if (label != null)
+            result.append(' ').append(label);
+        out.write(result.append(System.lineSeparator()).toString());
+    }
+}
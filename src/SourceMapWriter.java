@@ -0,0 +1,105 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Collects the source line of every instruction while the program is assembled, and writes them as a source map file
+ * (see SourceMap for the layout). Instructions are recorded in increasing address order, consecutive instructions on
+ * consecutive lines being merged into a single run.
+ */
+public class SourceMapWriter {
+
+    private String filePath;
+
+    // Runs of straight-line code, as parallel arrays: first address, line of the first instruction, number of instructions
+    private int[] runAddresses;
+    private int[] runLines;
+    private int[] runCounts;
+    private int runCount;
+
+    /**
+     * @param filePath The path of the source map file written by write().
+     */
+    public SourceMapWriter(String filePath) {
+        this.filePath = filePath;
+        runAddresses = new int[256];
+        runLines = new int[256];
+        runCounts = new int[256];
+    }
+
+    /**
+     * Records the source line of the next instruction.
+     * @param address The address of the instruction, greater than the one of the previous instruction.
+     * @param line The line of the instruction in the source file.
+     */
+    public void add(int address, int line) {
+        if (runCount > 0) {
+            int last = runCount - 1;
+            if (address == runAddresses[last] + 4 * runCounts[last] && line == runLines[last] + runCounts[last]) {
+                runCounts[last]++;
+                return;
+            }
+        }
+        if (runCount == runAddresses.length) {
+            runAddresses = Arrays.copyOf(runAddresses, runCount * 2);
+            runLines = Arrays.copyOf(runLines, runCount * 2);
+            runCounts = Arrays.copyOf(runCounts, runCount * 2);
+        }
+        runAddresses[runCount] = address;
+        runLines[runCount] = line;
+        runCounts[runCount] = 1;
+        runCount++;
+    }
+
+    /**
+     * Writes the source map file.
+     * @param sourceFilePath The path of the source file, as it will be reported by the lookups.
+     * @param symbolTable The symbol table of the program, only its labels are written.
+     * @throws IOException Exception raised while writing the file.
+     */
+    public void write(String sourceFilePath, Map<String, Symbol> symbolTable) throws IOException {
+        ArrayList<Symbol> labels = new ArrayList<>();
+        for (Symbol s : symbolTable.values()) {
+            if (s.getKind() == Symbol.Kind.LABEL)
+                labels.add(s);
+        }
+        labels.sort(Symbol.BY_ADDRESS);
+
+        // string pool: the source file path first, then the label names, each as a 2 byte length and its UTF-8 bytes
+        ArrayList<byte[]> strings = new ArrayList<>();
+        strings.add(sourceFilePath.getBytes(StandardCharsets.UTF_8));
+        int[] nameOffsets = new int[labels.size()];
+        int stringsSize = 2 + strings.get(0).length;
+        for (int i = 0; i < labels.size(); i++) {
+            byte[] name = labels.get(i).getName().getBytes(StandardCharsets.UTF_8);
+            nameOffsets[i] = stringsSize;
+            strings.add(name);
+            stringsSize += 2 + name.length;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath), 1 << 16))) {
+            out.writeInt(SourceMap.MAGIC);
+            out.writeInt(runCount);
+            out.writeInt(labels.size());
+            out.writeInt(stringsSize);
+            for (int i = 0; i < runCount; i++) {
+                out.writeInt(runAddresses[i]);
+                out.writeInt(runLines[i]);
+                out.writeInt(runCounts[i]);
+            }
+            for (int i = 0; i < labels.size(); i++) {
+                out.writeInt(labels.get(i).getAddress());
+                out.writeInt(nameOffsets[i]);
+            }
+            for (byte[] string : strings) {
+                out.writeShort(string.length);
+                out.write(string);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+import java.util.Comparator;
+
+/**
+ * Entry of the symbol table: a label and the address of the instruction it marks, or a constant and its value.
+ */
+public class Symbol {
+    // Orders symbols by address, then by name
+    static final Comparator<Symbol> BY_ADDRESS = new Comparator<Symbol>() {
+        public int compare(Symbol a, Symbol b) {
+            return a.address != b.address ? Integer.compare(a.address, b.address) : a.name.compareTo(b.name);
+        }
+    };
+
+    // Labels hold the address of the instruction they mark, constants the value assigned by the directive defining them
+    enum Kind { LABEL, EQV, SET }
+
+    private String name;
+    private int address;
+    private int line;
+    private Kind kind;
+
+    Symbol(String name, int address, int line) {
+        this(name, address, line, Kind.LABEL);
+    }
+
+    Symbol(String name, int address, int line, Kind kind) {
+        this.name = name;
+        this.address = address;
+        this.line = line;
+        this.kind = kind;
+    }
+
+    public void setAddress(int address) { this.address = address; }
+
+    public String getName() {return name; }
+    public int getAddress() { return address; }
+    public int getLine() { return line; }
+    public Kind getKind() { return kind; }
+}